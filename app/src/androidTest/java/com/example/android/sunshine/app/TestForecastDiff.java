@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentValues;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks the operations a forecast swap is dispatched as.  The days are stored, so that pages
+    of the forecasts can be read, and each forecast is built from a subset of their dates.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+    private static final String LOCATION = "diff-test";
+    private static final int DAYS = 6;
+
+    private final long[] mDates = new long[DAYS];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.HourlyEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.ArchiveEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Diff");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long locationRowId = Long.parseLong(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+
+        ContentValues[] days = new ContentValues[DAYS];
+        long start = WeatherContract.normalizeDate(1419033600000L);
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = WeatherContract.normalizeDate(start + i * DateUtils.DAY_IN_MILLIS);
+            days[i] = new ContentValues();
+            days[i].put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            days[i].put(WeatherEntry.COLUMN_DATE, mDates[i]);
+            days[i].put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            days[i].put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            days[i].put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            days[i].put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            days[i].put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            days[i].put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            days[i].put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            days[i].put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    private Forecast createForecast(long displayConfig, boolean loaded, int... days) {
+        long[] dates = new long[days.length];
+        for (int i = 0; i < days.length; i++) {
+            dates[i] = mDates[days[i]];
+        }
+        Forecast forecast = new Forecast(LOCATION, new ForecastIndex(dates), displayConfig,
+                null, null);
+        if (loaded) {
+            forecast.loadPage(mContext, 0);
+        }
+        return forecast;
+    }
+
+    private static List<String> dispatch(ForecastDiff diff) {
+        RecordingAdapter adapter = new RecordingAdapter();
+        diff.dispatchTo(adapter);
+        return adapter.mOperations;
+    }
+
+    public void testInsertAndRemove() {
+        Forecast oldForecast = createForecast(0, true, 0, 1, 3, 4);
+        Forecast newForecast = createForecast(0, true, 0, 2, 3, 4, 5);
+        ForecastDiff diff = ForecastDiff.compute(oldForecast, newForecast);
+        assertNotNull(diff);
+        assertEquals(Arrays.asList("remove 1 1", "insert 1 1", "insert 4 1"), dispatch(diff));
+    }
+
+    public void testConsecutiveRowsMerge() {
+        Forecast oldForecast = createForecast(0, true, 0, 1, 2, 3);
+        Forecast newForecast = createForecast(0, true, 0, 4, 5);
+        ForecastDiff diff = ForecastDiff.compute(oldForecast, newForecast);
+        assertEquals(Arrays.asList("remove 1 3", "insert 1 2"), dispatch(diff));
+    }
+
+    public void testUnchangedRowsAreKept() {
+        ForecastDiff diff = ForecastDiff.compute(createForecast(0, true, 0, 1, 2),
+                createForecast(0, true, 0, 1, 2));
+        assertTrue("Error: Rows displaying the same values shouldn't change", diff.isEmpty());
+    }
+
+    public void testDisplayChangeChangesEveryRow() {
+        ForecastDiff diff = ForecastDiff.compute(createForecast(0, true, 0, 1, 2),
+                createForecast(1, true, 0, 1, 2));
+        assertEquals(Arrays.asList("change 0 3"), dispatch(diff));
+    }
+
+    /*
+        A row which wasn't loaded may be showing its placeholder, and the old forecast won't
+        report its page once swapped out, so it has to be bound again.
+     */
+    public void testUnloadedRowsChange() {
+        ForecastDiff diff = ForecastDiff.compute(createForecast(0, false, 0, 1, 2),
+                createForecast(0, true, 0, 1, 2));
+        assertEquals(Arrays.asList("change 0 3"), dispatch(diff));
+
+        diff = ForecastDiff.compute(createForecast(0, true, 0, 1, 2),
+                createForecast(0, false, 0, 1, 2));
+        assertEquals(Arrays.asList("change 0 3"), dispatch(diff));
+
+        diff = ForecastDiff.compute(createForecast(0, false, 0, 1, 2),
+                createForecast(0, false, 0, 1, 3));
+        assertEquals(Arrays.asList("change 0 2", "remove 2 1", "insert 2 1"), dispatch(diff));
+    }
+
+    public void testNewFirstDayIsNotDiffed() {
+        assertNull("Error: The day labels depend on the first day",
+                ForecastDiff.compute(createForecast(0, true, 0, 1), createForecast(0, true, 1, 2)));
+    }
+
+    public void testReadPagesMakeTheDiffStale() {
+        Forecast oldForecast = createForecast(0, false, 0, 1, 2);
+        ForecastDiff diff = ForecastDiff.compute(oldForecast, createForecast(0, true, 0, 1, 2));
+        assertTrue(diff.isBasedOn(oldForecast));
+        assertFalse(diff.isBasedOn(createForecast(0, false, 0, 1, 2)));
+        oldForecast.loadPage(mContext, 0);
+        assertFalse("Error: A page was read since the diff", diff.isBasedOn(oldForecast));
+    }
+
+    private static class RecordingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        final ArrayList<String> mOperations = new ArrayList<>();
+
+        RecordingAdapter() {
+            registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mOperations.add("insert " + positionStart + " " + itemCount);
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mOperations.add("remove " + positionStart + " " + itemCount);
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    mOperations.add("change " + positionStart + " " + itemCount);
+                }
+            });
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
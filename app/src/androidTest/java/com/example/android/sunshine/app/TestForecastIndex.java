@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+
+public class TestForecastIndex extends AndroidTestCase {
+
+    public void testSortedLookup() {
+        long[] dates = {100L, 200L, 300L, 400L};
+        ForecastIndex index = new ForecastIndex(dates);
+        assertTrue("Error: Increasing dates should be sorted", index.isSorted());
+        assertEquals(dates.length, index.size());
+        for (int i = 0; i < dates.length; i++) {
+            assertEquals(dates[i], index.getDate(i));
+            assertEquals("Error: Wrong position for " + dates[i],
+                    i, index.getPositionForDate(dates[i]));
+        }
+    }
+
+    public void testSortedMiss() {
+        ForecastIndex index = new ForecastIndex(new long[]{100L, 200L, 300L});
+        // Before, between and after the dates, where a binary search reports insertion points
+        assertEquals(RecyclerView.NO_POSITION, index.getPositionForDate(50L));
+        assertEquals(RecyclerView.NO_POSITION, index.getPositionForDate(150L));
+        assertEquals(RecyclerView.NO_POSITION, index.getPositionForDate(350L));
+    }
+
+    public void testUnsortedLookup() {
+        ForecastIndex index = new ForecastIndex(new long[]{300L, 100L, 200L});
+        assertFalse("Error: Decreasing dates shouldn't be sorted", index.isSorted());
+        assertEquals(0, index.getPositionForDate(300L));
+        assertEquals(1, index.getPositionForDate(100L));
+        assertEquals(2, index.getPositionForDate(200L));
+        assertEquals(RecyclerView.NO_POSITION, index.getPositionForDate(250L));
+    }
+
+    public void testDuplicateDatesArentSorted() {
+        // The binary search needs strictly increasing dates to find a single position
+        ForecastIndex index = new ForecastIndex(new long[]{100L, 200L, 200L});
+        assertFalse("Error: Repeated dates shouldn't count as sorted", index.isSorted());
+        assertEquals(1, index.getPositionForDate(200L));
+    }
+
+    public void testEmpty() {
+        assertEquals(0, ForecastIndex.EMPTY.size());
+        assertTrue(ForecastIndex.EMPTY.isSorted());
+        assertEquals(RecyclerView.NO_POSITION, ForecastIndex.EMPTY.getPositionForDate(100L));
+
+        ForecastIndex single = new ForecastIndex(new long[]{100L});
+        assertTrue(single.isSorted());
+        assertEquals(0, single.getPositionForDate(100L));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.SparseBooleanArray;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/*
+    Checks that the checked rows follow their ids as rows are inserted, removed and replaced,
+    and that the selection survives a save and restore.  The rows are checked directly rather
+    than clicked, as clicking needs the views to be laid out in a RecyclerView.
+ */
+public class TestItemChoiceManager extends AndroidTestCase {
+
+    private IdAdapter mAdapter;
+    private ItemChoiceManager mChoiceManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new IdAdapter(100, 101, 102, 103, 104, 105);
+        mChoiceManager = new ItemChoiceManager(mAdapter);
+    }
+
+    private void check(int position) {
+        mChoiceManager.mCheckStates.put(position, true);
+        mChoiceManager.mCheckedIdStates.put(mAdapter.getItemId(position), position);
+    }
+
+    private void assertChecked(int... positions) {
+        int checked = 0;
+        for (int position = 0; position < mAdapter.getItemCount(); position++) {
+            if (mChoiceManager.isItemChecked(position)) {
+                assertTrue("Error: Position " + position + " shouldn't be checked",
+                        checked < positions.length && positions[checked] == position);
+                checked++;
+            }
+        }
+        assertEquals("Error: Wrong number of checked positions", positions.length, checked);
+        assertEquals("Error: The checked ids should match the checked positions",
+                positions.length, mChoiceManager.mCheckedIdStates.size());
+        for (int position : positions) {
+            assertEquals("Error: The id at " + position + " should be checked there", position,
+                    mChoiceManager.mCheckedIdStates.get(mAdapter.getItemId(position), -1));
+        }
+    }
+
+    public void testInsertionMovesCheckedRows() {
+        check(1);
+        check(3);
+        mAdapter.insert(2, 200, 201);
+        assertChecked(1, 5);
+
+        mAdapter.insert(0, 202);
+        assertChecked(2, 6);
+
+        mAdapter.insert(mAdapter.getItemCount(), 203);
+        assertChecked(2, 6);
+    }
+
+    public void testRemovalUnchecksRemovedRows() {
+        check(0);
+        check(2);
+        check(4);
+        mAdapter.remove(1, 2);
+        assertChecked(0, 2);
+
+        mAdapter.remove(0, 1);
+        assertChecked(1);
+    }
+
+    public void testInsertionsAndRemovalsCombine() {
+        check(2);
+        check(5);
+        mAdapter.insert(0, 200, 201, 202);
+        mAdapter.remove(3, 2);
+        mAdapter.insert(4, 203);
+        mAdapter.remove(0, 1);
+        assertChecked(2, 6);
+    }
+
+    public void testDataSetChangeFindsCheckedIds() {
+        check(1);
+        check(4);
+        // Replace the list without telling which rows moved, the ids are found near their
+        // old positions, and the checked row which is gone is unchecked
+        mAdapter.replace(99, 104, 100, 102, 103);
+        assertChecked(1);
+    }
+
+    public void testSaveAndRestore() {
+        check(1);
+        check(4);
+        Bundle state = new Bundle();
+        mChoiceManager.onSaveInstanceState(state);
+
+        ItemChoiceManager restored = new ItemChoiceManager(mAdapter);
+        restored.onRestoreInstanceState(state);
+        mChoiceManager = restored;
+        assertChecked(1, 4);
+
+        // The restored ids are still tracked when the rows then move
+        mAdapter.insert(0, 200);
+        assertChecked(2, 5);
+    }
+
+    /*
+        State saved before the format was versioned held a marshalled parcel.  It can't be
+        trusted to match the current format, so it's dropped rather than read.
+     */
+    public void testOldStateIsDropped() {
+        Parcel parcel = Parcel.obtain();
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        checkStates.put(3, true);
+        parcel.writeSparseBooleanArray(checkStates);
+        parcel.writeInt(1);
+        parcel.writeLong(103);
+        parcel.writeInt(3);
+        Bundle state = new Bundle();
+        state.putByteArray("SIK", parcel.marshall());
+        parcel.recycle();
+
+        mChoiceManager.onRestoreInstanceState(state);
+        assertChecked();
+
+        Bundle empty = new Bundle();
+        mChoiceManager.onRestoreInstanceState(empty);
+        assertChecked();
+    }
+
+    private static class IdAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private final ArrayList<Long> mIds = new ArrayList<>();
+
+        IdAdapter(long... ids) {
+            setHasStableIds(true);
+            for (long id : ids) {
+                mIds.add(id);
+            }
+        }
+
+        void insert(int position, long... ids) {
+            for (int i = 0; i < ids.length; i++) {
+                mIds.add(position + i, ids[i]);
+            }
+            notifyItemRangeInserted(position, ids.length);
+        }
+
+        void remove(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mIds.remove(position);
+            }
+            notifyItemRangeRemoved(position, count);
+        }
+
+        void replace(long... ids) {
+            mIds.clear();
+            for (long id : ids) {
+                mIds.add(id);
+            }
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds.get(position);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.size();
+        }
+    }
+}
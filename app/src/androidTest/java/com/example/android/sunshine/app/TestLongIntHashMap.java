@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestLongIntHashMap extends AndroidTestCase {
+
+    private static final int MIN_CAPACITY = 8;
+
+    /*
+        Finds keys whose probe sequence starts at the given slot of an empty map of the minimum
+        capacity, by putting each candidate alone in a map and seeing where it lands.
+     */
+    private static long[] keysStartingAt(int home, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            LongIntHashMap map = new LongIntHashMap();
+            map.put(key, 0);
+            if (map.isUsed(home)) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    private static int slotOf(LongIntHashMap map, long key) {
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.isUsed(slot) && map.keyAt(slot) == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public void testPutGetRemove() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(42L, -1));
+
+        map.put(42L, 1);
+        map.put(43L, 2);
+        assertEquals(2, map.size());
+        assertEquals(1, map.get(42L, -1));
+        assertTrue(map.containsKey(43L));
+
+        map.put(42L, 3);
+        assertEquals("Error: Putting an existing key shouldn't add an entry", 2, map.size());
+        assertEquals(3, map.get(42L, -1));
+
+        map.remove(42L);
+        map.remove(44L);
+        assertEquals(1, map.size());
+        assertFalse(map.containsKey(42L));
+        assertEquals(2, map.get(43L, -1));
+    }
+
+    /*
+        Keys starting in the last slot wrap around to the first ones.  Removing the first of
+        them has to move the others back across the end of the table, or they can no longer be
+        found.
+     */
+    public void testRemoveWrapsAround() {
+        int last = MIN_CAPACITY - 1;
+        long[] wrapping = keysStartingAt(last, 3);
+        long atZero = keysStartingAt(0, 1)[0];
+
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 0; i < wrapping.length; i++) {
+            map.put(wrapping[i], i);
+        }
+        map.put(atZero, 10);
+        assertEquals("Error: The map shouldn't have grown yet", MIN_CAPACITY, map.capacity());
+        assertEquals(last, slotOf(map, wrapping[0]));
+        assertEquals(0, slotOf(map, wrapping[1]));
+        assertEquals(1, slotOf(map, wrapping[2]));
+        assertEquals(2, slotOf(map, atZero));
+
+        map.remove(wrapping[0]);
+        assertEquals(3, map.size());
+        assertFalse(map.containsKey(wrapping[0]));
+        assertEquals(1, map.get(wrapping[1], -1));
+        assertEquals(2, map.get(wrapping[2], -1));
+        assertEquals(10, map.get(atZero, -1));
+        assertEquals("Error: The entry after the gap should move back across the end",
+                last, slotOf(map, wrapping[1]));
+        assertEquals(0, slotOf(map, wrapping[2]));
+        assertEquals(1, slotOf(map, atZero));
+
+        map.remove(wrapping[2]);
+        assertEquals(1, map.get(wrapping[1], -1));
+        assertEquals(10, map.get(atZero, -1));
+        assertEquals("Error: The entry should move back to its own slot",
+                0, slotOf(map, atZero));
+    }
+
+    public void testResizeKeepsEntries() {
+        LongIntHashMap map = new LongIntHashMap();
+        int count = 100;
+        for (int i = 0; i < count; i++) {
+            map.put(i * 86400000L, i);
+        }
+        assertEquals(count, map.size());
+        assertTrue("Error: The table should stay at most half full",
+                map.capacity() >= count * 2);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.get(i * 86400000L, -1));
+        }
+
+        int used = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.isUsed(slot)) {
+                used++;
+                assertEquals(map.keyAt(slot) / 86400000L, map.valueAt(slot));
+            }
+        }
+        assertEquals(count, used);
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals("Error: Clearing a large map should release its table",
+                MIN_CAPACITY, map.capacity());
+        assertFalse(map.containsKey(0L));
+    }
+
+    public void testMatchesHashMap() {
+        Random random = new Random(4711);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            // Few distinct keys, so most removals find their key and entries come and go
+            long key = random.nextInt(64);
+            if (random.nextBoolean()) {
+                map.put(key, i);
+                expected.put(key, i);
+            } else {
+                map.remove(key);
+                expected.remove(key);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = 0; key < 64; key++) {
+            Integer value = expected.get(key);
+            assertEquals("Error: Wrong value for " + key,
+                    value == null ? -1 : value.intValue(), map.get(key, -1));
+        }
+    }
+}
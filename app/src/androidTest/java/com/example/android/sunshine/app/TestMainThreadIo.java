@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/*
+    Fails when starting MainActivity touches the disk or network on the main thread from a call
+    site which isn't known yet.  The known ones are there to be moved off the main thread, so
+    remove them as they are; a new one should be fixed rather than added.
+ */
+public class TestMainThreadIo extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestMainThreadIo.class.getSimpleName();
+
+    static final HashSet<String> KNOWN_CALL_SITES = new HashSet<>(Arrays.asList(
+            "Utility.getPreferredLocation",
+            "Utility.isMetric",
+            "Utility.getArtUrlForWeatherCondition"
+    ));
+
+    static final long FIRST_FRAME_TIMEOUT_MILLIS = 5000;
+
+    public TestMainThreadIo() {
+        super(MainActivity.class);
+    }
+
+    public void testNoNewMainThreadIo() throws Exception {
+        assertTrue("Error: Main thread I/O isn't collected on this device, so it can't be checked",
+                MainThreadIoMonitor.isCollecting());
+        MainThreadIoMonitor.reset();
+        StartupTracer.markProcessStart();
+        getActivity();
+
+        PollingCheck.check("The first frame was never drawn", FIRST_FRAME_TIMEOUT_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return StartupTracer.getTimeToFirstFrame() != StartupTracer.NOT_REACHED;
+                    }
+                });
+        getInstrumentation().waitForIdleSync();
+
+        ArrayList<String> newCallSites = new ArrayList<>();
+        for (Map.Entry<String, Integer> callSite
+                : MainThreadIoMonitor.getCallSites().entrySet()) {
+            Log.i(LOG_TAG, callSite.getKey() + ": " + callSite.getValue());
+            if (!KNOWN_CALL_SITES.contains(callSite.getKey())) {
+                newCallSites.add(callSite.getKey());
+            }
+        }
+        assertTrue("Error: New main thread I/O in " + newCallSites + "\n"
+                + MainThreadIoMonitor.getReport(), newCallSites.isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/*
+    Logs the startup trace of MainActivity.  The activity is launched from the already running
+    test process, so this is the activity's share of a start rather than a cold start, and its
+    timings vary too much between devices to be held to a budget.  For the real cold start, kill
+    the process and use "adb shell am start -W".  The test only fails when startup is clearly
+    broken, e.g. when the first frame waits on the network or the deferred steps are back on the
+    main thread.
+ */
+public class TestStartup extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestStartup.class.getSimpleName();
+
+    // Pathological limits only, far beyond what even a slow emulator takes
+    static final long MAX_TIME_TO_FIRST_FRAME_MILLIS = 10000;
+    static final long DEFERRED_INIT_TIMEOUT_MILLIS = 30000;
+
+    static final String[] DEFERRED_STEPS = {
+            "initializeSyncAdapter", "checkPlayServices", "getRegistrationId"
+    };
+
+    public TestStartup() {
+        super(MainActivity.class);
+    }
+
+    public void testTimeToFirstFrame() throws Exception {
+        // Start the trace from the launch of the activity
+        StartupTracer.markProcessStart();
+        long launchStart = SystemClock.elapsedRealtime();
+        getActivity();
+        long launchMillis = SystemClock.elapsedRealtime() - launchStart;
+
+        PollingCheck.check("The first frame was never drawn", MAX_TIME_TO_FIRST_FRAME_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return StartupTracer.getTimeToFirstFrame() != StartupTracer.NOT_REACHED;
+                    }
+                });
+        long timeToFirstFrame = StartupTracer.getTimeToFirstFrame();
+        Log.i(LOG_TAG, "Time to first frame: " + timeToFirstFrame + " ms, launch took "
+                + launchMillis + " ms");
+    }
+
+    public void testDeferredInitRunsOffMainThread() throws Exception {
+        StartupTracer.markProcessStart();
+        getActivity();
+
+        PollingCheck.check("The deferred initialization never completed",
+                DEFERRED_INIT_TIMEOUT_MILLIS, new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return StartupTracer.getStepDurations().keySet()
+                                .containsAll(Arrays.asList(DEFERRED_STEPS));
+                    }
+                });
+
+        Map<String, Long> steps = StartupTracer.getStepDurations();
+        Set<String> mainThreadSteps = StartupTracer.getMainThreadSteps();
+        long deferredMillis = 0;
+        for (String step : DEFERRED_STEPS) {
+            Log.i(LOG_TAG, step + ": " + steps.get(step) + " ms");
+            assertFalse("Error: " + step + " ran on the main thread",
+                    mainThreadSteps.contains(step));
+            deferredMillis += steps.get(step);
+        }
+        Log.i(LOG_TAG, "Deferred initialization: " + deferredMillis + " ms");
+    }
+}
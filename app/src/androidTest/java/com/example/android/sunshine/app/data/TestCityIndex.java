@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+public class TestCityIndex extends AndroidTestCase {
+
+    public void testBuildMatch() {
+        assertEquals("Every typed word should match as a prefix of the name",
+                "name:new* name:yo*", CityIndex.buildMatch("New Yo"));
+        assertEquals("A country code after a comma should match the country",
+                "name:london* country:gb*", CityIndex.buildMatch("London, GB"));
+        assertNull("Text without any word shouldn't be looked up", CityIndex.buildMatch(" ,- "));
+    }
+
+    public void testSuggest() {
+        List<CityIndex.City> cities = CityIndex.getInstance(mContext).suggest("lond", 5);
+        CityIndex.City london = CityIndex.findExact(cities, "london");
+        assertNotNull("London should be suggested for \"lond\"", london);
+        assertEquals("London,GB", london.getLocationSetting());
+
+        assertTrue("FTS3 syntax in the typed text shouldn't match anything, or fail",
+                CityIndex.getInstance(mContext).suggest("\"*)(-", 5).isEmpty());
+    }
+}
@@ -55,6 +55,8 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ArchiveEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HourlyEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -91,6 +93,7 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_GEOHASH);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
@@ -177,6 +180,88 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+    /*
+        The archive can't be fetched again, so it has to survive upgrades from the first version
+        which has it, along with the locations it refers to.  The database is built as that
+        version left it, then opened.
+     */
+    public void testUpgradeKeepsArchive() {
+        SQLiteDatabase oldDb = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        oldDb.execSQL("CREATE TABLE location (_id INTEGER PRIMARY KEY,"
+                + " location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL,"
+                + " coord_lat REAL NOT NULL, coord_long REAL NOT NULL);");
+        oldDb.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + " location_id INTEGER NOT NULL, date INTEGER NOT NULL,"
+                + " short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL,"
+                + " min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL,"
+                + " pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL,"
+                + " UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+        oldDb.execSQL("CREATE TABLE weather_archive (_id INTEGER PRIMARY KEY,"
+                + " location_id INTEGER NOT NULL, period_start INTEGER NOT NULL,"
+                + " period_days INTEGER NOT NULL, day_count INTEGER NOT NULL,"
+                + " weather_id INTEGER NOT NULL, min REAL NOT NULL, max REAL NOT NULL,"
+                + " humidity REAL NOT NULL, pressure REAL NOT NULL, wind REAL NOT NULL,"
+                + " UNIQUE (location_id, period_start, period_days) ON CONFLICT REPLACE);");
+        long locationRowId = oldDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(oldDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues)
+                != -1);
+        ContentValues archiveValues = new ContentValues();
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_LOC_KEY, locationRowId);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_PERIOD_START,
+                TestUtilities.TEST_DATE);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_PERIOD_DAYS,
+                WeatherContract.ArchiveEntry.PERIOD_DAY);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_DAY_COUNT, 1);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID, 321);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_MIN_TEMP, 65);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_MAX_TEMP, 75);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_HUMIDITY, 1.2);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_PRESSURE, 1.3);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_WIND_SPEED, 5.5);
+        assertTrue(oldDb.insert(WeatherContract.ArchiveEntry.TABLE_NAME, null, archiveValues)
+                != -1);
+        oldDb.setVersion(3);
+        oldDb.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Cursor cursor = db.query(WeatherContract.ArchiveEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertTrue("Error: The archive was lost upgrading the database", cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: The archive changed upgrading the database",
+                cursor, archiveValues);
+        cursor.close();
+
+        // The location the archive refers to is kept, and indexed like a new one
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        LocationIndex.putGeohash(locationValues);
+        cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME, null,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationRowId)}, null, null, null);
+        assertTrue("Error: The archive's location was lost upgrading the database",
+                cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: The location wasn't given its geohash",
+                cursor, locationValues);
+        cursor.close();
+
+        // The forecast is kept too, and the hours can be stored
+        cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertTrue("Error: The forecast was lost upgrading the database", cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: The forecast changed upgrading the database",
+                cursor, weatherValues);
+        cursor.close();
+        cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name = ?",
+                new String[]{WeatherContract.HourlyEntry.TABLE_NAME});
+        assertTrue("Error: The hourly table wasn't created upgrading the database",
+                cursor.moveToFirst());
+        cursor.close();
+        dbHelper.close();
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestForecastChangeFeed extends AndroidTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.HourlyEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.ArchiveEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(ContentUris.parseId(locationUri)));
+    }
+
+    public void testMerge() {
+        ForecastChange a = new ForecastChange(null).withLocation(TestUtilities.TEST_LOCATION);
+        a.addUpdate(1L, Collections.singleton(WeatherEntry.COLUMN_MAX_TEMP));
+        ForecastChange b = new ForecastChange(null).withLocation(TestUtilities.TEST_LOCATION);
+        b.addUpdate(2L, Collections.singleton(WeatherEntry.COLUMN_MIN_TEMP));
+
+        ForecastChange merged = ForecastChange.merge(a, b);
+        assertEquals(TestUtilities.TEST_LOCATION, merged.getLocationSetting());
+        assertFalse(merged.areRowsChanged());
+        assertEquals(2, merged.getDates().length);
+        assertTrue(merged.isColumnChanged(WeatherEntry.COLUMN_MAX_TEMP));
+        assertTrue(merged.isColumnChanged(WeatherEntry.COLUMN_MIN_TEMP));
+        assertFalse(merged.isColumnChanged(WeatherEntry.COLUMN_HUMIDITY));
+
+        ForecastChange other = ForecastChange.merge(merged,
+                new ForecastChange(null).withLocation("elsewhere"));
+        assertNull("Error: Changes of different locations should merge into any location",
+                other.getLocationSetting());
+        assertNull(other.getDates());
+    }
+
+    public void testUpdateIsPublished() throws InterruptedException {
+        final CountDownLatch published = new CountDownLatch(1);
+        final ForecastChange[] received = new ForecastChange[1];
+        ForecastChangeFeed.Subscription subscription = ForecastChangeFeed.subscribe(
+                TestUtilities.TEST_LOCATION, new ForecastChangeFeed.Listener() {
+                    @Override
+                    public void onForecastChanged(ForecastChange change) {
+                        received[0] = change;
+                        published.countDown();
+                    }
+                });
+        try {
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+            long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+            mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                    WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(date)});
+
+            assertTrue("Error: The update wasn't published",
+                    published.await(5, TimeUnit.SECONDS));
+            ForecastChange change = received[0];
+            assertEquals(TestUtilities.TEST_LOCATION, change.getLocationSetting());
+            assertFalse("Error: An update shouldn't add or remove days", change.areRowsChanged());
+            assertTrue(change.isDateChanged(date));
+            assertEquals(1, change.getDates().length);
+            assertTrue(change.isColumnChanged(WeatherEntry.COLUMN_MAX_TEMP));
+            assertFalse(change.isColumnChanged(WeatherEntry.COLUMN_MIN_TEMP));
+        } finally {
+            subscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastRepository extends AndroidTestCase {
+    private ContentValues[] mWeatherValues;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.HourlyEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.ArchiveEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mWeatherValues = TestProvider.createBulkInsertWeatherValues(
+                ContentUris.parseId(locationUri));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+    }
+
+    public void testGetForecast() {
+        ForecastRepository repository = ForecastRepository.getInstance(mContext);
+        DailyForecast forecast = repository.getForecast(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, 4);
+        assertEquals("Error: The forecast should be limited to the days asked for",
+                4, forecast.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            assertEquals(mWeatherValues[i].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    forecast.getDate(i));
+            assertEquals(mWeatherValues[i].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    forecast.getHigh(i));
+            assertEquals(mWeatherValues[i].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                    forecast.getWeatherId(i));
+        }
+        assertSame("Error: Reading the same days again should hit the cache",
+                forecast, repository.getForecast(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, 4));
+
+        DailyForecast day = repository.getDay(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE - 1000 * 60 * 60 * 24);
+        assertEquals("Error: A day which isn't stored should be empty", 0, day.size());
+    }
+
+    public void testWriteInvalidatesCache() {
+        ForecastRepository repository = ForecastRepository.getInstance(mContext);
+        DailyForecast before = repository.getDay(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        assertEquals(1, before.size());
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(before.getDate(0))});
+
+        DailyForecast after = repository.getDay(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        assertEquals("Error: The cached day should be dropped once it's updated",
+                99.0, after.getHigh(0));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastSnapshot.class.getSimpleName();
+
+    private static final int BENCHMARK_WARM_UP_ITERATIONS = 20;
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.HourlyEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.ArchiveEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+
+        // The test days are long past, so the snapshot is written from the first of them
+        ForecastSnapshot.update(mContext, TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // The widgets, Muzei and the wearable read the snapshot, so it mustn't outlive the test
+        // days for the tests which come after
+        ForecastSnapshot.delete(mContext, TestUtilities.TEST_LOCATION);
+        super.tearDown();
+    }
+
+    private Cursor queryForecast() {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testSnapshotMatchesProvider() {
+        ForecastSnapshot snapshot = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: The snapshot couldn't be mapped", snapshot);
+
+        Cursor cursor = queryForecast();
+        assertEquals("Error: The snapshot should hold every stored day",
+                cursor.getCount(), snapshot.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(cursor.getLong(0), snapshot.getDate(i));
+            assertEquals(cursor.getInt(1), snapshot.getWeatherId(i));
+            assertEquals(cursor.getDouble(2), snapshot.getHigh(i));
+            assertEquals(cursor.getDouble(3), snapshot.getLow(i));
+            assertEquals(cursor.getString(4), snapshot.getDescription(i));
+        }
+        cursor.close();
+
+        assertEquals("Error: The first day should be found by its date",
+                0, snapshot.getFirstPositionFrom(TestUtilities.TEST_DATE));
+        assertEquals("Error: No day should be found after the last one",
+                snapshot.getCount(), snapshot.getFirstPositionFrom(Long.MAX_VALUE / 2));
+    }
+
+    private double readSnapshot(int iterations) {
+        double sum = 0;
+        for (int n = 0; n < iterations; n++) {
+            ForecastSnapshot snapshot =
+                    ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+            for (int i = 0; i < snapshot.getCount(); i++) {
+                sum += snapshot.getWeatherId(i) + snapshot.getHigh(i) + snapshot.getLow(i)
+                        + snapshot.getDescription(i).length();
+            }
+        }
+        return sum;
+    }
+
+    private double readProvider(int iterations) {
+        double sum = 0;
+        for (int n = 0; n < iterations; n++) {
+            Cursor cursor = queryForecast();
+            while (cursor.moveToNext()) {
+                sum += cursor.getInt(1) + cursor.getDouble(2) + cursor.getDouble(3)
+                        + cursor.getString(4).length();
+            }
+            cursor.close();
+        }
+        return sum;
+    }
+
+    /*
+        Logs how long reading the forecast takes from the snapshot and from the provider, after
+        both have been warmed up.  Only a measurement: timings on a shared device are too noisy
+        to fail the build on.  The provider is in the test's process here, so the cost of
+        crossing processes which the widgets and Muzei pay isn't part of its time.
+     */
+    public void testReadBenchmark() {
+        assertEquals("Error: Both reads should see the same forecast",
+                readProvider(1), readSnapshot(1), 1e-6);
+        readSnapshot(BENCHMARK_WARM_UP_ITERATIONS);
+        readProvider(BENCHMARK_WARM_UP_ITERATIONS);
+
+        long snapshotStart = SystemClock.elapsedRealtime();
+        readSnapshot(BENCHMARK_ITERATIONS);
+        long snapshotMillis = SystemClock.elapsedRealtime() - snapshotStart;
+
+        long cursorStart = SystemClock.elapsedRealtime();
+        readProvider(BENCHMARK_ITERATIONS);
+        long cursorMillis = SystemClock.elapsedRealtime() - cursorStart;
+
+        Log.i(LOG_TAG, BENCHMARK_ITERATIONS + " reads took " + snapshotMillis
+                + "ms from the snapshot and " + cursorMillis + "ms from the provider");
+    }
+}
@@ -25,6 +25,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
 import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
@@ -51,6 +52,16 @@ public class TestProvider extends AndroidTestCase {
        the delete functionality in the ContentProvider.
      */
     public void deleteAllRecordsFromProvider() {
+        mContext.getContentResolver().delete(
+                WeatherContract.HourlyEntry.CONTENT_URI,
+                null,
+                null
+        );
+        mContext.getContentResolver().delete(
+                WeatherContract.ArchiveEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 WeatherEntry.CONTENT_URI,
                 null,
@@ -512,4 +523,304 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        The forecast list reads the weather a page at a time, by asking for a limited number of
+        days from a start date.  Make sure each page starts at the right day and is no longer than
+        asked for.
+     */
+    public void testLimitedWeatherQuery() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        final int pageSize = 4;
+        long startDate = bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        for (int page = 0; page * pageSize < BULK_INSERT_RECORDS_TO_INSERT; page++) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithStartDate(
+                            TestUtilities.TEST_LOCATION, startDate, pageSize),
+                    null,
+                    null,
+                    null,
+                    WeatherEntry.COLUMN_DATE + " ASC"
+            );
+            int expected = Math.min(pageSize, BULK_INSERT_RECORDS_TO_INSERT - page * pageSize);
+            assertEquals("Error: wrong number of rows in page " + page,
+                    expected, cursor.getCount());
+            for (int i = 0; i < expected; i++) {
+                cursor.moveToPosition(i);
+                TestUtilities.validateCurrentRecord("testLimitedWeatherQuery.  Error validating page "
+                        + page, cursor, bulkInsertContentValues[page * pageSize + i]);
+            }
+            // The next page starts the day after the last row of this one
+            cursor.moveToLast();
+            startDate = cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE))
+                    + 1000 * 60 * 60 * 24;
+            cursor.close();
+        }
+    }
+
+    /*
+        Writing the weather of a location should only notify the observers of that location, so
+        syncing one saved location doesn't reload the forecast shown for another.
+     */
+    public void testScopedNotifications() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true,
+                locationObserver);
+        TestUtilities.TestContentObserver otherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation("London, UK"), true, otherObserver);
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        locationObserver.waitForNotificationOrFail();
+        assertFalse("Error: Another location was notified of the bulk insert",
+                otherObserver.mContentChanged);
+
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherObserver);
+        otherObserver.mHT.quit();
+    }
+
+    /*
+        Past days are moved into the archive rather than deleted.  Recent ones keep a row each,
+        while old ones are rolled up into weeks, without losing any day on the way.
+     */
+    public void testArchiveCompaction() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long dayInMillis = 1000 * 60 * 60 * 24;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        // Three past days, today and two more days of forecast, plus two weeks long ago
+        final int oldDays = 14;
+        ContentValues[] template = createBulkInsertWeatherValues(locationRowId);
+        ContentValues[] values = new ContentValues[6 + oldDays];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new ContentValues(template[i % template.length]);
+            long offset = i < 6 ? i - 3 : i - 6 - 200;
+            values[i].put(WeatherEntry.COLUMN_DATE, today + offset * dayInMillis);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+
+        int archived = mContext.getContentResolver().update(
+                WeatherContract.ArchiveEntry.buildCompactUri(today), new ContentValues(), null, null);
+        assertEquals("Error: wrong number of days archived", 3 + oldDays, archived);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: the forecast should only keep today onward", 3, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.ArchiveEntry.buildArchiveLocation(TestUtilities.TEST_LOCATION),
+                new String[]{
+                        WeatherContract.ArchiveEntry.COLUMN_PERIOD_DAYS,
+                        WeatherContract.ArchiveEntry.COLUMN_DAY_COUNT},
+                null, null, WeatherContract.ArchiveEntry.COLUMN_PERIOD_START + " ASC");
+        int dailyRows = 0;
+        int weeklyDays = 0;
+        while (cursor.moveToNext()) {
+            if (cursor.getInt(0) == WeatherContract.ArchiveEntry.PERIOD_DAY) {
+                dailyRows++;
+            } else {
+                assertEquals(WeatherContract.ArchiveEntry.PERIOD_WEEK, cursor.getInt(0));
+                weeklyDays += cursor.getInt(1);
+            }
+        }
+        assertEquals("Error: recent days should be archived a row each", 3, dailyRows);
+        assertEquals("Error: days were lost rolling up weeks", oldDays, weeklyDays);
+        assertTrue("Error: old days were not rolled up into weeks",
+                cursor.getCount() - dailyRows <= 3);
+        cursor.close();
+    }
+
+    /*
+        The summaries are computed by the provider.  Check them against the values of the days
+        inserted by createBulkInsertWeatherValues.
+     */
+    public void testStatsQueries() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+        long firstDate = bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        long lastDate = bulkInsertContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1]
+                .getAsLong(WeatherEntry.COLUMN_DATE);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.StatsEntry.buildRangeStats(TestUtilities.TEST_LOCATION, 0, 0),
+                null, null, null, null);
+        assertTrue("Error: no range summary", cursor.moveToFirst());
+        assertEquals(1, cursor.getCount());
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getInt(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_DAY_COUNT)));
+        assertEquals(firstDate, cursor.getLong(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_START_DATE)));
+        assertEquals(lastDate, cursor.getLong(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_END_DATE)));
+        // The highs go up from 75 and the lows go down from 65, a degree a day
+        assertEquals(75.0 + BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_MAX_TEMP)));
+        assertEquals(65.0 - BULK_INSERT_RECORDS_TO_INSERT + 1, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_MIN_TEMP)));
+        assertEquals(75.0 + (BULK_INSERT_RECORDS_TO_INSERT - 1) / 2.0, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_AVG_MAX_TEMP)), 0.001);
+        cursor.close();
+
+        // Bounding the range leaves out the days outside it
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.StatsEntry.buildRangeStats(TestUtilities.TEST_LOCATION,
+                        bulkInsertContentValues[2].getAsLong(WeatherEntry.COLUMN_DATE),
+                        bulkInsertContentValues[4].getAsLong(WeatherEntry.COLUMN_DATE)),
+                new String[]{WeatherContract.StatsEntry.COLUMN_DAY_COUNT}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(3, cursor.getInt(0));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.StatsEntry.buildWeeklyStats(TestUtilities.TEST_LOCATION, 0, 0),
+                null, null, null, null);
+        int weeklyDays = 0;
+        long previousStart = Long.MIN_VALUE;
+        while (cursor.moveToNext()) {
+            long start = cursor.getLong(
+                    cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_START_DATE));
+            assertTrue("Error: weeks out of order", start > previousStart);
+            previousStart = start;
+            weeklyDays += cursor.getInt(
+                    cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_DAY_COUNT));
+        }
+        assertTrue("Error: ten days span two or three weeks",
+                cursor.getCount() >= 2 && cursor.getCount() <= 3);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, weeklyDays);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.StatsEntry.buildConditionStats(TestUtilities.TEST_LOCATION, 0, 0),
+                null, null, null, null);
+        assertTrue("Error: no condition histogram", cursor.moveToFirst());
+        assertEquals(1, cursor.getCount());
+        assertEquals(bulkInsertContentValues[0].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                cursor.getInt(cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_WEATHER_ID)));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getInt(
+                cursor.getColumnIndex(WeatherContract.StatsEntry.COLUMN_DAY_COUNT)));
+        cursor.close();
+    }
+
+    private static ContentValues createLocationValues(String locationSetting, String cityName,
+                                                      double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        return values;
+    }
+
+    /*
+        Nearby locations are found through the geohashes the provider stores with them, so the
+        locations have to be inserted through the provider.
+     */
+    public void testNearbyLocations() {
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                createLocationValues("Anchorage,US", "Anchorage", 61.2181, -149.9003));
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                createLocationValues("London,GB", "London", 51.5074, -0.1278));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(51.48, 0.0), null, null, null, null);
+        assertTrue("Error: no nearest location", cursor.moveToFirst());
+        assertEquals(1, cursor.getCount());
+        assertEquals("London,GB", cursor.getString(
+                cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        assertTrue("Error: London is less than 10 km away", cursor.getDouble(
+                cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE)) < 10);
+        cursor.close();
+
+        // Alaska is far from everything else, so this has to widen the search a long way
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(0.0, -120.0),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        assertTrue("Error: no nearest location", cursor.moveToFirst());
+        assertEquals("Anchorage,US", cursor.getString(0));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearbyLocationsUri(64.8, -147.7, 600, 0),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING, LocationEntry.COLUMN_DISTANCE},
+                null, null, null);
+        assertEquals("Error: two locations are within 600 km", 2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: nearest location should come first",
+                TestUtilities.TEST_LOCATION, cursor.getString(0));
+        cursor.moveToNext();
+        assertEquals("Anchorage,US", cursor.getString(0));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearbyLocationsUri(64.8, -147.7, 100, 0),
+                null, null, null, null);
+        assertEquals("Error: one location is within 100 km", 1, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Hours are inserted a day per row, and come back from the provider a row per hour, with
+        the values as stored to their resolution.
+     */
+    public void testHourlyQuery() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long firstDay = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        long secondDay = firstDay + DateUtils.DAY_IN_MILLIS;
+
+        double[] temps = new double[24];
+        double[] precipitations = new double[24];
+        double[] windSpeeds = new double[24];
+        for (int hour = 0; hour < 24; hour++) {
+            temps[hour] = -5.25 + hour * 0.5;
+            precipitations[hour] = hour % 6 == 0 ? 1.2 : 0;
+            windSpeeds[hour] = 3 + hour % 4;
+        }
+        ContentValues[] days = {
+                WeatherContract.HourlyEntry.buildHourlyValues(locationRowId, firstDay, 0,
+                        temps, precipitations, windSpeeds),
+                WeatherContract.HourlyEntry.buildHourlyValues(locationRowId, secondDay, 0,
+                        temps, precipitations, windSpeeds)
+        };
+        assertEquals(2, mContext.getContentResolver().bulkInsert(
+                WeatherContract.HourlyEntry.CONTENT_URI, days));
+
+        // From 20:00 on the first day to 04:00 on the second
+        long startTime = firstDay + 20 * DateUtils.HOUR_IN_MILLIS;
+        long endTime = secondDay + 4 * DateUtils.HOUR_IN_MILLIS;
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.HourlyEntry.buildHourlyLocationWithRange(
+                        TestUtilities.TEST_LOCATION, startTime, endTime),
+                null, null, null, null);
+        assertEquals("Error: the range covers eight hours", 8, cursor.getCount());
+
+        int timeIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_TIME);
+        int tempIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_TEMP);
+        int windIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED);
+        long expectedTime = startTime;
+        while (cursor.moveToNext()) {
+            assertEquals(expectedTime, cursor.getLong(timeIndex));
+            int hour = (int) (((expectedTime - firstDay) / DateUtils.HOUR_IN_MILLIS) % 24);
+            assertEquals(temps[hour], cursor.getDouble(tempIndex), 0.05);
+            assertEquals(windSpeeds[hour], cursor.getDouble(windIndex), 0.05);
+            expectedTime += DateUtils.HOUR_IN_MILLIS;
+        }
+
+        // Moving back decodes the first day again
+        assertTrue(cursor.moveToFirst());
+        assertEquals(temps[20], cursor.getDouble(tempIndex), 0.05);
+        cursor.close();
+    }
 }
@@ -36,6 +36,18 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_NEARBY = WeatherContract.LocationEntry.buildNearestLocationUri(51.5, -0.12);
+    // content://com.example.android.sunshine.app/archive"
+    private static final Uri TEST_ARCHIVE_DIR = WeatherContract.ArchiveEntry.CONTENT_URI;
+    private static final Uri TEST_ARCHIVE_WITH_LOCATION_DIR = WeatherContract.ArchiveEntry.buildArchiveLocation(LOCATION_QUERY);
+    private static final Uri TEST_ARCHIVE_COMPACT = WeatherContract.ArchiveEntry.buildCompactUri(TEST_DATE);
+    // content://com.example.android.sunshine.app/stats"
+    private static final Uri TEST_STATS_WEEKLY = WeatherContract.StatsEntry.buildWeeklyStats(LOCATION_QUERY, TEST_DATE, 0);
+    private static final Uri TEST_STATS_RANGE = WeatherContract.StatsEntry.buildRangeStats(LOCATION_QUERY, 0, 0);
+    private static final Uri TEST_STATS_CONDITIONS = WeatherContract.StatsEntry.buildConditionStats(LOCATION_QUERY, 0, TEST_DATE);
+    // content://com.example.android.sunshine.app/hourly"
+    private static final Uri TEST_HOURLY_DIR = WeatherContract.HourlyEntry.CONTENT_URI;
+    private static final Uri TEST_HOURLY_WITH_LOCATION_DIR = WeatherContract.HourlyEntry.buildHourlyLocationWithRange(LOCATION_QUERY, TEST_DATE, 0);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +65,23 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEARBY URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEARBY), WeatherProvider.LOCATION_NEARBY);
+        assertEquals("Error: The ARCHIVE URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_DIR), WeatherProvider.ARCHIVE);
+        assertEquals("Error: The ARCHIVE WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_WITH_LOCATION_DIR), WeatherProvider.ARCHIVE_WITH_LOCATION);
+        assertEquals("Error: The ARCHIVE COMPACT URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_COMPACT), WeatherProvider.ARCHIVE_COMPACT);
+        assertEquals("Error: The STATS WEEKLY URI was matched incorrectly.",
+                testMatcher.match(TEST_STATS_WEEKLY), WeatherProvider.STATS_WEEKLY);
+        assertEquals("Error: The STATS RANGE URI was matched incorrectly.",
+                testMatcher.match(TEST_STATS_RANGE), WeatherProvider.STATS_RANGE);
+        assertEquals("Error: The STATS CONDITIONS URI was matched incorrectly.",
+                testMatcher.match(TEST_STATS_CONDITIONS), WeatherProvider.STATS_CONDITIONS);
+        assertEquals("Error: The HOURLY URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_DIR), WeatherProvider.HOURLY);
+        assertEquals("Error: The HOURLY WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_WITH_LOCATION_DIR), WeatherProvider.HOURLY_WITH_LOCATION);
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import java.util.Random;
+
+public class TestSyncScheduler extends AndroidTestCase {
+    private static final float MID_VOLATILITY =
+            (SyncScheduler.HIGH_VOLATILITY + SyncScheduler.LOW_VOLATILITY) / 2;
+    private static final float MID_OPENS =
+            (SyncScheduler.FREQUENT_OPENS_PER_DAY + SyncScheduler.RARE_OPENS_PER_DAY) / 2;
+
+    /*
+        Always draws the same value, so the jitter of the backoff is known.
+     */
+    private static class FixedRandom extends Random {
+        private final double mValue;
+
+        FixedRandom(double value) {
+            mValue = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return mValue;
+        }
+    }
+
+    public void testSyncIntervalFollowsVolatilityAndUsage() {
+        assertEquals("Error: An average forecast and usage should keep the base interval",
+                SunshineSyncAdapter.SYNC_INTERVAL,
+                SyncScheduler.computeSyncInterval(MID_VOLATILITY, MID_OPENS, false));
+        // Halved, then three quarters of that, rounded to the nearest 15 minutes
+        assertEquals(75 * 60, SyncScheduler.computeSyncInterval(
+                SyncScheduler.HIGH_VOLATILITY, SyncScheduler.FREQUENT_OPENS_PER_DAY, false));
+        // Doubled, then half as long again
+        assertEquals(9 * 60 * 60, SyncScheduler.computeSyncInterval(0, 0, false));
+    }
+
+    public void testSyncIntervalIsBounded() {
+        int interval = SyncScheduler.computeSyncInterval(100, 100, false);
+        assertTrue(interval >= SyncScheduler.MIN_SYNC_INTERVAL);
+        assertEquals(interval, SyncScheduler.computeSyncInterval(
+                SyncScheduler.HIGH_VOLATILITY, SyncScheduler.FREQUENT_OPENS_PER_DAY, false));
+        assertTrue(SyncScheduler.computeSyncInterval(0, 0, false)
+                <= SyncScheduler.MAX_SYNC_INTERVAL);
+        assertEquals("Error: Polling with push should be capped at its own maximum",
+                SyncScheduler.MAX_PUSH_SYNC_INTERVAL,
+                SyncScheduler.computeSyncInterval(0, 0, true));
+    }
+
+    public void testSyncIntervalIsLongerWithPush() {
+        // Three times the stretched interval, rounded to the nearest 15 minutes
+        assertEquals(210 * 60, SyncScheduler.computeSyncInterval(
+                SyncScheduler.HIGH_VOLATILITY, SyncScheduler.FREQUENT_OPENS_PER_DAY, true));
+        assertTrue(SyncScheduler.computeSyncInterval(MID_VOLATILITY, MID_OPENS, true)
+                > SyncScheduler.computeSyncInterval(MID_VOLATILITY, MID_OPENS, false));
+    }
+
+    public void testBackoffDoublesUpToTheMaximum() {
+        long previous = 0;
+        for (int attempt = 0; attempt <= SyncScheduler.MAX_RETRIES + 40; attempt++) {
+            long ceiling = Math.min(SyncScheduler.MAX_BACKOFF_MILLIS,
+                    SyncScheduler.INITIAL_BACKOFF_MILLIS << Math.min(attempt, 16));
+            long low = SyncScheduler.computeBackoff(attempt, new FixedRandom(0));
+            long high = SyncScheduler.computeBackoff(attempt, new FixedRandom(0.999999));
+            assertEquals("Error: Half of the delay should be fixed", ceiling / 2, low);
+            assertTrue("Error: The delay of attempt " + attempt + " is over its ceiling",
+                    high < ceiling && high >= low);
+            assertTrue("Error: The delay shouldn't shrink with the attempts", low >= previous);
+            previous = low;
+        }
+        assertEquals(SyncScheduler.INITIAL_BACKOFF_MILLIS / 2,
+                SyncScheduler.computeBackoff(0, new FixedRandom(0)));
+        assertEquals("Error: A large attempt shouldn't overflow the delay",
+                SyncScheduler.MAX_BACKOFF_MILLIS / 2,
+                SyncScheduler.computeBackoff(Integer.MAX_VALUE, new FixedRandom(0)));
+    }
+
+    public void testRetriesAndManualSyncsAreNeverDeferred() {
+        Bundle manual = new Bundle();
+        manual.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        assertFalse(SyncScheduler.shouldDefer(mContext, manual));
+
+        Bundle retry = new Bundle();
+        retry.putBoolean(SyncScheduler.EXTRA_RETRY, true);
+        assertFalse("Error: A deferred retry would end the backoff",
+                SyncScheduler.shouldDefer(mContext, retry));
+    }
+}
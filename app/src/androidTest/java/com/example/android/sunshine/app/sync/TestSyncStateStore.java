@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+public class TestSyncStateStore extends AndroidTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences("sync_state", 0).edit().clear().commit();
+    }
+
+    public void testLocationStatus() {
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                Utility.getLocationStatus(mContext));
+        SunshineSyncAdapter.setLocationStatus(mContext,
+                SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        assertEquals("Error: The status should be readable before it's written to disk",
+                SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+        Utility.resetLocationStatus(mContext);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                Utility.getLocationStatus(mContext));
+    }
+
+    public void testLastNotificationFallsBackToDefaultPreferences() {
+        String key = mContext.getString(R.string.pref_last_notification);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit().putLong(key, 42).commit();
+        assertEquals(42, SyncStateStore.getLastNotification(mContext));
+        SyncStateStore.setLastNotification(mContext, 43);
+        assertEquals(43, SyncStateStore.getLastNotification(mContext));
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit().remove(key).commit();
+    }
+
+    public void testWearData() {
+        assertTrue(SyncStateStore.isWearDataChanged(mContext, "1", "2", "art"));
+        SyncStateStore.setWearData(mContext, "1", "2", "art");
+        assertFalse(SyncStateStore.isWearDataChanged(mContext, "1", "2", "art"));
+        assertTrue(SyncStateStore.isWearDataChanged(mContext, "1", "3", "art"));
+        assertTrue("Error: Data without art should always be sent",
+                SyncStateStore.isWearDataChanged(mContext, "1", "2", null));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    The engine is tested with local stub sources, so these tests don't need the network.
+ */
+public class TestWeatherSourceEngine extends AndroidTestCase {
+    private static final long BUDGET_MILLIS = 500;
+
+    private static class StubSource implements WeatherSource {
+        private final String mName;
+        private final long mDelayMillis;
+        private final SourceForecast mForecast;
+        private final IOException mFailure;
+
+        StubSource(String name, long delayMillis, SourceForecast forecast, IOException failure) {
+            mName = name;
+            mDelayMillis = delayMillis;
+            mForecast = forecast;
+            mFailure = failure;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public SourceForecast fetch(String locationSetting, int numDays) throws IOException {
+            try {
+                Thread.sleep(mDelayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException("Cancelled");
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            return mForecast;
+        }
+    }
+
+    private static SourceForecast createForecast(double high) {
+        SourceForecast forecast = new SourceForecast();
+        forecast.cityName = "North Pole";
+        forecast.coordLat = 64.7488;
+        forecast.coordLong = -147.353;
+        SourceForecast.Day day = new SourceForecast.Day();
+        day.weatherId = 321;
+        day.description = "Asteroids";
+        day.high = high;
+        day.low = 65.0;
+        day.humidity = 1.2;
+        day.pressure = 1.3;
+        day.windSpeed = 5.5;
+        day.windDirection = 1.1;
+        forecast.days.add(day);
+        return forecast;
+    }
+
+    public void testMergeByPriority() throws WeatherSourceException {
+        SourceForecast primary = createForecast(75);
+        primary.days.get(0).humidity = null;
+        SourceForecast secondary = createForecast(80);
+        secondary.days.get(0).humidity = 42.0;
+
+        SourceForecast merged = WeatherSourceEngine.merge(Arrays.asList(primary, secondary));
+        assertEquals(1, merged.days.size());
+        assertEquals("Error: fields should come from the highest priority source",
+                75.0, merged.days.get(0).high);
+        assertEquals("Error: missing fields should come from the next source",
+                42.0, merged.days.get(0).humidity);
+    }
+
+    public void testIncompleteDaysLeftOut() throws WeatherSourceException {
+        SourceForecast forecast = createForecast(75);
+        forecast.days.get(0).pressure = null;
+        SourceForecast merged = WeatherSourceEngine.merge(Arrays.asList(forecast));
+        assertNull("Error: a day missing a field can't be stored", merged.days.get(0));
+    }
+
+    public void testSlowAndFailedSourcesDropped() throws WeatherSourceException {
+        WeatherSourceEngine engine = new WeatherSourceEngine(Arrays.<WeatherSource>asList(
+                new StubSource("slow", BUDGET_MILLIS * 10, createForecast(90), null),
+                new StubSource("failing", 0, null, new IOException("Unreachable")),
+                new StubSource("fast", 0, createForecast(75), null)), BUDGET_MILLIS);
+
+        long start = System.currentTimeMillis();
+        SourceForecast forecast = engine.fetch("99705", 1);
+        assertTrue("Error: the slow source held up the fetch",
+                System.currentTimeMillis() - start < BUDGET_MILLIS * 5);
+        assertEquals("Error: the forecast should come from the only source which answered",
+                75.0, forecast.days.get(0).high);
+    }
+
+    public void testAllSourcesFailing() {
+        WeatherSourceEngine engine = new WeatherSourceEngine(Arrays.<WeatherSource>asList(
+                new StubSource("failing", 0, null, new IOException("Unreachable"))),
+                BUDGET_MILLIS);
+        try {
+            engine.fetch("99705", 1);
+            fail("Error: a fetch without any forecast should fail");
+        } catch (WeatherSourceException e) {
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, e.getLocationStatus());
+        }
+    }
+}
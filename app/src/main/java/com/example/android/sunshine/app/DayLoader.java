@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.DailyForecast;
+import com.example.android.sunshine.app.data.ForecastChange;
+import com.example.android.sunshine.app.data.ForecastChangeFeed;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads the forecast of a single day of a location through the {@link ForecastRepository}, and
+ * loads it again when the day changes.
+ */
+public class DayLoader extends AsyncTaskLoader<DailyForecast>
+        implements ForecastChangeFeed.Listener {
+    private final String mLocationSetting;
+    private final long mDate;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private ForecastChangeFeed.Subscription mSubscription;
+    private DailyForecast mDay;
+    private boolean mObserving;
+
+    public DayLoader(Context context, String locationSetting, long date) {
+        super(context);
+        mLocationSetting = locationSetting;
+        mDate = date;
+    }
+
+    @Override
+    public DailyForecast loadInBackground() {
+        return ForecastRepository.getInstance(getContext()).getDay(mLocationSetting, mDate);
+    }
+
+    @Override
+    public void deliverResult(DailyForecast day) {
+        if (isReset()) {
+            return;
+        }
+        mDay = day;
+        if (isStarted()) {
+            super.deliverResult(day);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            // Changes to the whole table, such as to the units, are only notified to observers
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, false, mObserver);
+            mSubscription = ForecastChangeFeed.subscribe(mLocationSetting, this);
+            mObserving = true;
+        }
+        if (mDay != null) {
+            deliverResult(mDay);
+        }
+        if (takeContentChanged() || mDay == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void onForecastChanged(ForecastChange change) {
+        // Changes of every location come with a notification of the whole table
+        if (change.getLocationSetting() != null
+                && change.isDateChanged(WeatherContract.normalizeDate(mDate))) {
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mDay = null;
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mSubscription.cancel();
+            mObserving = false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+/**
+ * Shows the main thread disk and network access counted by {@link MainThreadIoMonitor}.  Only
+ * reachable from the menu of debug builds.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+    private TextView mReportView;
+    private AsyncTask<Void, Void, String> mReportTask;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        int padding = getResources().getDimensionPixelSize(R.dimen.activity_vertical_margin);
+        mReportView = new TextView(this);
+        mReportView.setTypeface(Typeface.MONOSPACE);
+        mReportView.setPadding(padding, padding, padding, padding);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(mReportView);
+        setContentView(scrollView);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (!MainThreadIoMonitor.isCollecting()) {
+            mReportView.setText(R.string.diagnostics_not_collecting);
+            return;
+        }
+        // The report can have to read the log, which mustn't add to what it reports
+        mReportTask = new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                return MainThreadIoMonitor.getReport();
+            }
+
+            @Override
+            protected void onPostExecute(String report) {
+                mReportView.setText(report.isEmpty()
+                        ? getString(R.string.diagnostics_no_violations) : report);
+            }
+        }.execute();
+    }
+
+    @Override
+    protected void onPause() {
+        if (mReportTask != null) {
+            mReportTask.cancel(false);
+            mReportTask = null;
+        }
+        super.onPause();
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.example.android.sunshine.app.data.DailyForecast;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The forecast for a location, read from the provider a page at a time.
+ *
+ * The dates of every day are always known, see {@link ForecastIndex}, so the list has its final
+ * size straight away.  What each day displays is only read for the pages around the visible
+ * part of the list, and the pages far off screen are released again, so the memory used doesn't
+ * grow with the number of days stored.
+ *
+ * Pages hold every column the detail view displays as well, so that a day picked from the list
+ * can be shown without another query, see {@link ForecastCache}.
+ *
+ * Pages are only added and released on the main thread once the forecast has been delivered by
+ * {@link ForecastLoader}.
+ */
+public class Forecast {
+    public static final int PAGE_SIZE = 30;
+
+    // The columns of the weather table the pages hold
+    static final String[] PAGE_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Pages of rows are read one at a time, in the order they were requested
+    private static final ExecutorService sPageExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Notified on the main thread when a requested page has been read.
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(Forecast forecast, int positionStart, int itemCount);
+    }
+
+    private final String mLocationSetting;
+    private final ForecastIndex mIndex;
+    private final long mDisplayConfig;
+    private final String mCoordLat;
+    private final String mCoordLong;
+
+    // Read by the loader thread when it diffs the next forecast against this one, so guarded by
+    // its own lock.  Pages never change once they are put.
+    private final SparseArray<Page> mPages = new SparseArray<>();
+    // Guarded by mPages, counts the pages put, so a diff can tell it has gone stale
+    private int mPagesVersion;
+    private final SparseBooleanArray mPendingPages = new SparseBooleanArray();
+    private OnPageLoadedListener mListener;
+    // The changes from the forecast delivered before this one, set before this one is delivered
+    private ForecastDiff mDiff;
+
+    Forecast(String locationSetting, ForecastIndex index, long displayConfig,
+             String coordLat, String coordLong) {
+        mLocationSetting = locationSetting;
+        mIndex = index;
+        mDisplayConfig = displayConfig;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+    }
+
+    /**
+     * @return an empty forecast, which is shown until the first forecast is loaded
+     */
+    public static Forecast empty() {
+        return new Forecast(null, ForecastIndex.EMPTY, 0, null, null);
+    }
+
+    public int size() {
+        return mIndex.size();
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public ForecastIndex getIndex() {
+        return mIndex;
+    }
+
+    public long getDate(int position) {
+        return mIndex.getDate(position);
+    }
+
+    /**
+     * @return a fingerprint of the settings which change how every row is displayed
+     */
+    long getDisplayConfig() {
+        return mDisplayConfig;
+    }
+
+    /**
+     * @return the latitude of the location, or null if the location isn't known yet
+     */
+    public String getCoordLat() {
+        return mCoordLat;
+    }
+
+    public String getCoordLong() {
+        return mCoordLong;
+    }
+
+    public static int getPageForPosition(int position) {
+        return position / PAGE_SIZE;
+    }
+
+    private int getPageCount() {
+        return (size() + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    private Page getPage(int page) {
+        synchronized (mPages) {
+            return mPages.get(page);
+        }
+    }
+
+    private void putPage(int page, Page loaded) {
+        synchronized (mPages) {
+            mPages.put(page, loaded);
+            mPagesVersion++;
+        }
+    }
+
+    /**
+     * @return a value which changes whenever a page is read, so rows which weren't loaded may
+     * have become so
+     */
+    int getPagesVersion() {
+        synchronized (mPages) {
+            return mPagesVersion;
+        }
+    }
+
+    /**
+     * @return the changes from the forecast delivered before this one, or null if there's no
+     * diff and the whole list has to be refreshed
+     */
+    public ForecastDiff getDiff() {
+        return mDiff;
+    }
+
+    void setDiff(ForecastDiff diff) {
+        mDiff = diff;
+    }
+
+    /**
+     * @return whether the row at the given position has been read, and can be displayed
+     */
+    public boolean isLoaded(int position) {
+        Page page = getPage(getPageForPosition(position));
+        return page != null && page.mLoaded[position % PAGE_SIZE];
+    }
+
+    public int getWeatherId(int position) {
+        return getPage(getPageForPosition(position)).mWeatherIds[position % PAGE_SIZE];
+    }
+
+    public double getHigh(int position) {
+        return getPage(getPageForPosition(position)).mHighs[position % PAGE_SIZE];
+    }
+
+    public double getLow(int position) {
+        return getPage(getPageForPosition(position)).mLows[position % PAGE_SIZE];
+    }
+
+    public float getHumidity(int position) {
+        return getPage(getPageForPosition(position)).mHumidities[position % PAGE_SIZE];
+    }
+
+    public float getPressure(int position) {
+        return getPage(getPageForPosition(position)).mPressures[position % PAGE_SIZE];
+    }
+
+    public float getWindSpeed(int position) {
+        return getPage(getPageForPosition(position)).mWindSpeeds[position % PAGE_SIZE];
+    }
+
+    public float getDegrees(int position) {
+        return getPage(getPageForPosition(position)).mDegrees[position % PAGE_SIZE];
+    }
+
+    /**
+     * @return a value which changes whenever what the row at the given position displays changes,
+     * only meaningful if the row is loaded
+     */
+    long getFingerprint(int position) {
+        long fingerprint = mDisplayConfig;
+        fingerprint = 31 * fingerprint + getWeatherId(position);
+        fingerprint = 31 * fingerprint + Double.doubleToLongBits(getHigh(position));
+        fingerprint = 31 * fingerprint + Double.doubleToLongBits(getLow(position));
+        return fingerprint;
+    }
+
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Makes sure the pages of the given positions, and one page either side of them, are loaded,
+     * and releases the pages further away.
+     */
+    public void setVisibleRange(Context context, int firstPosition, int lastPosition) {
+        if (size() == 0 || firstPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int firstPage = Math.max(0, getPageForPosition(firstPosition) - 1);
+        int lastPage = Math.min(getPageCount() - 1, getPageForPosition(lastPosition) + 1);
+        synchronized (mPages) {
+            for (int i = mPages.size() - 1; i >= 0; i--) {
+                int page = mPages.keyAt(i);
+                if (page < firstPage || page > lastPage) {
+                    mPages.removeAt(i);
+                }
+            }
+        }
+        for (int page = firstPage; page <= lastPage; page++) {
+            requestPage(context, page);
+        }
+    }
+
+    /**
+     * Reads the given page in the background, unless it is loaded or already being read.
+     */
+    public void requestPage(Context context, final int page) {
+        if (getPage(page) != null || mPendingPages.get(page) || page >= getPageCount()) {
+            return;
+        }
+        readPageInBackground(context, page);
+    }
+
+    /**
+     * Reads the loaded pages holding the given days again, when their values were updated in
+     * place.  The rows keep showing the old values until the new ones are read.
+     */
+    public void refreshDates(Context context, long[] dates) {
+        for (long date : dates) {
+            int position = mIndex.getPositionForDate(date);
+            if (position == RecyclerView.NO_POSITION) {
+                continue;
+            }
+            int page = getPageForPosition(position);
+            if (getPage(page) != null && !mPendingPages.get(page)) {
+                readPageInBackground(context, page);
+            }
+        }
+    }
+
+    private void readPageInBackground(Context context, final int page) {
+        mPendingPages.put(page, true);
+        final Context appContext = context.getApplicationContext();
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Page loaded = readPage(appContext, page);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPendingPages.delete(page);
+                        if (loaded == null) {
+                            return;
+                        }
+                        putPage(page, loaded);
+                        if (mListener != null) {
+                            int start = page * PAGE_SIZE;
+                            mListener.onPageLoaded(Forecast.this, start,
+                                    Math.min(PAGE_SIZE, size() - start));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the given page on the calling thread, for the pages which should be ready before the
+     * forecast is delivered.
+     */
+    void loadPage(Context context, int page) {
+        if (page < getPageCount()) {
+            Page loaded = readPage(context, page);
+            if (loaded != null) {
+                putPage(page, loaded);
+            }
+        }
+    }
+
+    private Page readPage(Context context, int page) {
+        int start = page * PAGE_SIZE;
+        DailyForecast days = ForecastRepository.getInstance(context)
+                .getForecast(mLocationSetting, mIndex.getDate(start), PAGE_SIZE);
+        if (days.size() == 0) {
+            return null;
+        }
+        Page loaded = new Page();
+        for (int day = 0; day < days.size(); day++) {
+            // Match the rows by date, in case days were added or removed since the index was
+            // built.  A reload is on its way if they were.
+            int position = mIndex.getPositionForDate(days.getDate(day));
+            if (position < start || position >= start + PAGE_SIZE) {
+                continue;
+            }
+            int i = position - start;
+            loaded.mWeatherIds[i] = days.getWeatherId(day);
+            loaded.mHighs[i] = days.getHigh(day);
+            loaded.mLows[i] = days.getLow(day);
+            loaded.mHumidities[i] = days.getHumidity(day);
+            loaded.mPressures[i] = days.getPressure(day);
+            loaded.mWindSpeeds[i] = days.getWindSpeed(day);
+            loaded.mDegrees[i] = days.getDegrees(day);
+            loaded.mLoaded[i] = true;
+        }
+        return loaded;
+    }
+
+    /**
+     * The displayed values of {@link #PAGE_SIZE} consecutive days, in primitive arrays.
+     */
+    private static class Page {
+        final int[] mWeatherIds = new int[PAGE_SIZE];
+        final double[] mHighs = new double[PAGE_SIZE];
+        final double[] mLows = new double[PAGE_SIZE];
+        final float[] mHumidities = new float[PAGE_SIZE];
+        final float[] mPressures = new float[PAGE_SIZE];
+        final float[] mWindSpeeds = new float[PAGE_SIZE];
+        final float[] mDegrees = new float[PAGE_SIZE];
+        final boolean[] mLoaded = new boolean[PAGE_SIZE];
+    }
+}
@@ -16,7 +16,6 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -30,13 +29,14 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link Forecast} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements Forecast.OnPageLoadedListener {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -44,7 +44,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private Forecast mForecast = Forecast.empty();
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +73,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mForecast.getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +89,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by their date, which keeps their views across data changes.  This
+        // can't change once the ItemChoiceManager observes the adapter.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,27 +128,34 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+        boolean useLongToday = getItemViewType(position) == VIEW_TYPE_TODAY;
+
+        // Read date from the forecast, which is known even before the row's page is read
+        long dateInMillis = mForecast.getDate(position);
+
+        // Find TextView and set formatted date on it
+        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+
+        if (!mForecast.isLoaded(position)) {
+            // Show a placeholder until the page is read, see onPageLoaded
+            bindPlaceholder(forecastAdapterViewHolder);
+            mForecast.requestPage(mContext, Forecast.getPageForPosition(position));
+            mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
         }
 
+        int weatherId = mForecast.getWeatherId(position);
+        int defaultImage = useLongToday
+                ? Utility.getArtResourceForWeatherCondition(weatherId)
+                : Utility.getIconResourceForWeatherCondition(weatherId);
+
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
                     .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
                     .error(defaultImage)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
@@ -153,13 +164,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // the animator can use this to re-find the original view
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
+        // Read weather forecast from the forecast
         String description = Utility.getStringForWeatherCondition(mContext, weatherId);
 
         // Find TextView and set weather forecast on it
@@ -170,14 +175,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        // Read high temperature from the forecast
+        double high = mForecast.getHigh(position);
         String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        // Read low temperature from the forecast
+        double low = mForecast.getLow(position);
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
@@ -185,6 +190,32 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    private void bindPlaceholder(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        Glide.clear(forecastAdapterViewHolder.mIconView);
+        forecastAdapterViewHolder.mIconView.setImageDrawable(null);
+        forecastAdapterViewHolder.mDescriptionView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(null);
+        forecastAdapterViewHolder.mHighTempView.setText(null);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(null);
+        forecastAdapterViewHolder.mLowTempView.setText(null);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(null);
+    }
+
+    @Override
+    public void onPageLoaded(Forecast forecast, int positionStart, int itemCount) {
+        // Pages of a forecast that has since been swapped out are of no use
+        if (forecast == mForecast) {
+            notifyItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Loads the pages around the visible rows, and releases those far away from them.
+     */
+    public void onVisibleRangeChanged(int firstPosition, int lastPosition) {
+        mForecast.setVisibleRange(mContext, firstPosition, lastPosition);
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -208,18 +239,48 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mForecast.size();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    @Override
+    public long getItemId(int position) {
+        return position < mForecast.size() ? mForecast.getDate(position) : RecyclerView.NO_ID;
+    }
+
+    /**
+     * Swaps in a new forecast, or an empty one if null.  If it comes with a diff from the
+     * forecast currently displayed, only the rows that were added, removed or changed are
+     * rebound.
+     */
+    public void swapForecast(Forecast newForecast) {
+        if (newForecast == null) {
+            newForecast = Forecast.empty();
+        }
+        Forecast oldForecast = mForecast;
+        oldForecast.setOnPageLoadedListener(null);
+        mForecast = newForecast;
+        newForecast.setOnPageLoadedListener(this);
+        // The diff is computed by the loader, off the main thread
+        ForecastDiff diff = newForecast.getDiff();
+        if (diff != null && diff.isBasedOn(oldForecast)) {
+            diff.dispatchTo(this);
+        } else {
+            // The diff was computed against a forecast this adapter never displayed, or one
+            // which has read pages since
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public Forecast getForecast() {
+        return mForecast;
+    }
+
+    /**
+     * @return the position of the given date in the list, or {@link RecyclerView#NO_POSITION}
+     */
+    public int getPositionForDate(long date) {
+        return mForecast.getIndex().getPositionForDate(date);
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
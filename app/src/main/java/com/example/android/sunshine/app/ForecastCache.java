@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Holds the forecast the list displays most recently, so that the detail view can show a day
+ * picked from the list straight away instead of querying for it again.
+ *
+ * Only used on the main thread.
+ */
+public class ForecastCache {
+    private static Forecast sForecast;
+
+    private ForecastCache() {
+    }
+
+    static void put(Forecast forecast) {
+        sForecast = forecast;
+    }
+
+    /**
+     * @return the forecast for the given location, or null if it isn't cached
+     */
+    public static Forecast get(String locationSetting) {
+        Forecast forecast = sForecast;
+        if (forecast == null || !locationSetting.equals(forecast.getLocationSetting())) {
+            return null;
+        }
+        return forecast;
+    }
+
+    /**
+     * @return the position of the given day in the cached forecast for the location, with its
+     * page loaded, or {@link RecyclerView#NO_POSITION} if the day can't be shown from the cache
+     */
+    public static int getLoadedPosition(Forecast forecast, long date) {
+        if (forecast == null) {
+            return RecyclerView.NO_POSITION;
+        }
+        int position = forecast.getIndex().getPositionForDate(date);
+        if (position == RecyclerView.NO_POSITION || !forecast.isLoaded(position)) {
+            return RecyclerView.NO_POSITION;
+        }
+        return position;
+    }
+
+    /**
+     * Reads the days either side of the given position, if they aren't loaded yet, so that
+     * moving to the previous or next day doesn't have to wait for a query.
+     */
+    public static void prefetchAdjacent(Context context, Forecast forecast, int position) {
+        if (position > 0) {
+            forecast.requestPage(context, Forecast.getPageForPosition(position - 1));
+        }
+        if (position + 1 < forecast.size()) {
+            forecast.requestPage(context, Forecast.getPageForPosition(position + 1));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+
+/**
+ * The minimal set of insertions, removals and changes which turn one forecast into another.
+ *
+ * Both forecasts are sorted by date and a date appears at most once, so rows can't move and the
+ * diff is a single merge over the two lists of dates.  Rows are the same item when they have
+ * the same date, and have changed when their {@link Forecast#getFingerprint(int)} differs.
+ *
+ * Only the rows around the visible part of a forecast are loaded.  A row which wasn't loaded in
+ * the old forecast may be showing its placeholder, waiting for a page the old forecast will no
+ * longer report once it's swapped out, so it always changes: binding it again shows the new
+ * forecast's row, or requests its page.  A row which isn't loaded yet in the new forecast
+ * changes to its placeholder until its page is read.
+ */
+public class ForecastDiff {
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    // Each operation is stored as {type, position, count}, in the order they must be dispatched
+    private final ArrayList<int[]> mOperations = new ArrayList<>();
+    private final Forecast mBase;
+    private final int mBaseVersion;
+
+    private ForecastDiff(Forecast base, int baseVersion) {
+        mBase = base;
+        mBaseVersion = baseVersion;
+    }
+
+    /**
+     * Computes the diff between two forecasts.  Called on the loader thread, while the old
+     * forecast can still be reading pages on the main thread.
+     *
+     * @return the diff, or null if the lists can't be diffed incrementally, e.g. because the
+     * first day changed and with it the labels of the days that follow
+     */
+    public static ForecastDiff compute(Forecast oldForecast, Forecast newForecast) {
+        ForecastIndex oldIndex = oldForecast.getIndex();
+        ForecastIndex newIndex = newForecast.getIndex();
+        if (!oldIndex.isSorted() || !newIndex.isSorted()) {
+            return null;
+        }
+        if (oldIndex.size() > 0 && newIndex.size() > 0
+                && oldIndex.getDate(0) != newIndex.getDate(0)) {
+            // "Today", "Tomorrow" and the day names are relative to the first day
+            return null;
+        }
+
+        // Taken before any row is compared, so a page read meanwhile makes the diff stale
+        ForecastDiff diff = new ForecastDiff(oldForecast, oldForecast.getPagesVersion());
+        int oldPosition = 0;
+        int newPosition = 0;
+        // Position in the list as it is while the operations are being applied
+        int position = 0;
+        while (oldPosition < oldIndex.size() || newPosition < newIndex.size()) {
+            if (newPosition == newIndex.size()
+                    || (oldPosition < oldIndex.size()
+                        && oldIndex.getDate(oldPosition) < newIndex.getDate(newPosition))) {
+                diff.add(REMOVE, position);
+                oldPosition++;
+            } else if (oldPosition == oldIndex.size()
+                    || oldIndex.getDate(oldPosition) > newIndex.getDate(newPosition)) {
+                diff.add(INSERT, position);
+                position++;
+                newPosition++;
+            } else {
+                if (!oldForecast.isLoaded(oldPosition) || !newForecast.isLoaded(newPosition)
+                        || oldForecast.getFingerprint(oldPosition)
+                            != newForecast.getFingerprint(newPosition)) {
+                    diff.add(CHANGE, position);
+                }
+                position++;
+                oldPosition++;
+                newPosition++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Adds an operation on a single row, merging it with the previous operation when they form
+     * a range.
+     */
+    private void add(int type, int position) {
+        if (!mOperations.isEmpty()) {
+            int[] last = mOperations.get(mOperations.size() - 1);
+            if (last[0] == type) {
+                // Successive removals happen at the same position, the others one row further
+                int expected = type == REMOVE ? last[1] : last[1] + last[2];
+                if (position == expected) {
+                    last[2]++;
+                    return;
+                }
+            }
+        }
+        mOperations.add(new int[]{type, position, 1});
+    }
+
+    /**
+     * @return whether this diff still turns the given forecast into the new one, i.e. it was
+     * computed against that forecast and no page of it has been read since
+     */
+    public boolean isBasedOn(Forecast forecast) {
+        return mBase == forecast && mBaseVersion == forecast.getPagesVersion();
+    }
+
+    public boolean isEmpty() {
+        return mOperations.isEmpty();
+    }
+
+    /**
+     * Notifies the adapter of each operation, in order.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int[] operation : mOperations) {
+            switch (operation[0]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(operation[1], operation[2]);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(operation[1], operation[2]);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(operation[1], operation[2]);
+                    break;
+            }
+        }
+    }
+}
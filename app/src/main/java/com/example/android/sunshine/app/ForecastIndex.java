@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * Maps the dates of a forecast to their positions.
+ *
+ * The forecast is sorted by date, so the dates are kept in a primitive array and looked up by
+ * binary search.  The index holds every day of the forecast, while what the days display is
+ * read a page at a time, see {@link Forecast}.
+ */
+public class ForecastIndex {
+    public static final ForecastIndex EMPTY = new ForecastIndex(new long[0]);
+
+    private final long[] mDates;
+    private final boolean mSorted;
+
+    ForecastIndex(long[] dates) {
+        mDates = dates;
+        boolean sorted = true;
+        for (int i = 1; i < dates.length && sorted; i++) {
+            sorted = dates[i - 1] < dates[i];
+        }
+        mSorted = sorted;
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    boolean isSorted() {
+        return mSorted;
+    }
+
+    /**
+     * @return the position of the given date, or {@link RecyclerView#NO_POSITION} if it isn't
+     * part of the forecast
+     */
+    public int getPositionForDate(long date) {
+        if (mSorted) {
+            int position = Arrays.binarySearch(mDates, date);
+            return position >= 0 ? position : RecyclerView.NO_POSITION;
+        }
+        // Only if the dates weren't sorted, which the forecast queries always are
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == date) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+}
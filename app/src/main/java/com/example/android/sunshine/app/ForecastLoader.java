@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.content.AsyncTaskLoader;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.ForecastChange;
+import com.example.android.sunshine.app.data.ForecastChangeFeed;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Arrays;
+
+/**
+ * Loads the {@link Forecast} for a location, from today onward.
+ *
+ * Only the dates are read for the whole forecast, in chunks keyed on the last date read so
+ * that no single query has to hold every row.  The pages around the visible part of the list
+ * are read before the forecast is delivered, so a reload doesn't flash placeholders, and the
+ * rest are read as the list scrolls.
+ */
+public class ForecastLoader extends AsyncTaskLoader<Forecast>
+        implements ForecastChangeFeed.Listener {
+    private static final int INDEX_CHUNK_SIZE = 500;
+
+    private static final String[] INDEX_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE
+    };
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private final String mLocationSetting;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private ForecastChangeFeed.Subscription mSubscription;
+    // Set on the main thread, read by the next load to diff against
+    private volatile Forecast mForecast;
+    private boolean mObserving;
+
+    // Set from the main thread as the list scrolls, read by the next load
+    private volatile int mFirstVisiblePosition;
+    private volatile int mLastVisiblePosition;
+
+    public ForecastLoader(Context context, String locationSetting) {
+        super(context);
+        mLocationSetting = locationSetting;
+    }
+
+    /**
+     * Sets the positions which should be loaded along with the next forecast.
+     */
+    public void setVisibleRange(int firstPosition, int lastPosition) {
+        mFirstVisiblePosition = firstPosition;
+        mLastVisiblePosition = lastPosition;
+    }
+
+    @Override
+    public Forecast loadInBackground() {
+        Context context = getContext();
+        String coordLat = null;
+        String coordLong = null;
+        Cursor location = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                LOCATION_COLUMNS,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{mLocationSetting},
+                null);
+        if (location != null) {
+            if (location.moveToFirst()) {
+                coordLat = location.getString(0);
+                coordLong = location.getString(1);
+            }
+            location.close();
+        }
+
+        ForecastIndex index = new ForecastIndex(readDates(context));
+        Forecast forecast = new Forecast(mLocationSetting, index, getDisplayConfig(context),
+                coordLat, coordLong);
+        int firstPage = Math.max(0, Forecast.getPageForPosition(mFirstVisiblePosition));
+        int lastPage = Math.max(firstPage, Forecast.getPageForPosition(mLastVisiblePosition));
+        for (int page = firstPage; page <= lastPage; page++) {
+            forecast.loadPage(context, page);
+        }
+        Forecast previous = mForecast;
+        if (previous != null) {
+            forecast.setDiff(ForecastDiff.compute(previous, forecast));
+        }
+        return forecast;
+    }
+
+    /**
+     * Reads the date of every day from today onward, a chunk at a time.
+     */
+    private long[] readDates(Context context) {
+        long[] dates = new long[INDEX_CHUNK_SIZE];
+        int count = 0;
+        long startDate = System.currentTimeMillis();
+        while (true) {
+            Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    mLocationSetting, startDate, INDEX_CHUNK_SIZE);
+            Cursor cursor = context.getContentResolver().query(uri, INDEX_COLUMNS, null, null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (cursor == null) {
+                break;
+            }
+            int read = cursor.getCount();
+            try {
+                if (count + read > dates.length) {
+                    dates = Arrays.copyOf(dates, Math.max(dates.length * 2, count + read));
+                }
+                while (cursor.moveToNext()) {
+                    dates[count++] = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (read < INDEX_CHUNK_SIZE) {
+                break;
+            }
+            // Start dates are normalized to the start of their day, so continue from the next one
+            startDate = dates[count - 1] + DateUtils.DAY_IN_MILLIS;
+        }
+        return Arrays.copyOf(dates, count);
+    }
+
+    /**
+     * Fingerprints the settings which change how every forecast row is displayed.
+     */
+    private static long getDisplayConfig(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+        return 31L * artPack.hashCode() + (Utility.isMetric(context) ? 1 : 0);
+    }
+
+    @Override
+    public void deliverResult(Forecast forecast) {
+        if (isReset()) {
+            return;
+        }
+        mForecast = forecast;
+        ForecastCache.put(forecast);
+        if (isStarted()) {
+            super.deliverResult(forecast);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            // The pages are read with their own queries, so observe the tables rather than a
+            // cursor.  Only notifications of the whole weather table are observed, such as when
+            // the units change, while changes to the location's days come from the change feed.
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, false, mObserver);
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.LocationEntry.CONTENT_URI, true, mObserver);
+            mSubscription = ForecastChangeFeed.subscribe(mLocationSetting, this);
+            mObserving = true;
+        }
+        if (mForecast != null) {
+            deliverResult(mForecast);
+        }
+        if (takeContentChanged() || mForecast == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void onForecastChanged(ForecastChange change) {
+        if (change.getLocationSetting() == null) {
+            // Published along with a notification of the whole table, which the observer gets
+            return;
+        }
+        if (change.areRowsChanged() || change.getDates() == null || mForecast == null) {
+            // Days came or went, so the dates of the list have to be read again
+            onContentChanged();
+        } else if (isPageColumnChanged(change)) {
+            // Only values changed, so only the pages of those days have to be read again
+            mForecast.refreshDates(getContext(), change.getDates());
+        }
+    }
+
+    private static boolean isPageColumnChanged(ForecastChange change) {
+        for (String column : Forecast.PAGE_COLUMNS) {
+            if (change.isColumnChanged(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mForecast = null;
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mSubscription.cancel();
+            mObserving = false;
+        }
+    }
+}
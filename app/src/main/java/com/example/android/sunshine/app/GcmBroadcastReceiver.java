@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
+import com.example.android.sunshine.app.sync.ForecastDeltaService;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 
 public class GcmBroadcastReceiver extends BroadcastReceiver {
@@ -32,6 +33,7 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
     private static final String EXTRA_SENDER = "from";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    private static final String EXTRA_DELTA = "delta";
 
     public static final int NOTIFICATION_ID = 1;
     private NotificationManager mNotificationManager;
@@ -56,12 +58,21 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
             if (GoogleCloudMessaging.MESSAGE_TYPE_MESSAGE.equals(messageType)) {
                 // Is this our message?? Better be if you're going to act on it!
                 if (BuildConfig.GOOGLE_PROJECT_NUMBER.equals(extras.getString(EXTRA_SENDER))) {
+                    // Forecast changes are applied in the background
+                    String delta = extras.getString(EXTRA_DELTA);
+                    if (delta != null) {
+                        context.startService(new Intent(context, ForecastDeltaService.class)
+                                .putExtra(ForecastDeltaService.EXTRA_DELTA, delta));
+                    }
+
                     // Process message and then post a notification of the received message.
                     String weather = extras.getString(EXTRA_WEATHER);
                     String location = extras.getString(EXTRA_LOCATION);
-                    String alert = "Heads up: " + weather + " in " + location + "!";
+                    if (weather != null && location != null) {
+                        String alert = "Heads up: " + weather + " in " + location + "!";
 
-                    sendNotification(context, alert);
+                        sendNotification(context, alert);
+                    }
                 }
 
                 Log.i(LOG_TAG, "Received: " + extras.toString());
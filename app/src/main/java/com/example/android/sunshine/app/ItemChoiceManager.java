@@ -17,9 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Parcel;
 import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -27,13 +25,21 @@ import android.util.SparseBooleanArray;
 import android.widget.AbsListView;
 import android.widget.Checkable;
 
+import java.util.Arrays;
+
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  When rows are
+ * inserted or removed, the checked positions are moved along with them, and when the whole data
+ * set changes they are found again by their stable ids.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
-    private final String SELECTED_ITEMS_KEY = "SIK";
+    // Bump whenever the saved state changes, state saved in another format is dropped
+    private static final int STATE_VERSION = 2;
+    private final String STATE_VERSION_KEY = "SIK_VERSION";
+    private final String CHECKED_POSITIONS_KEY = "SIK_POSITIONS";
+    private final String CHECKED_IDS_KEY = "SIK_IDS";
+    private final String CHECKED_ID_POSITIONS_KEY = "SIK_ID_POSITIONS";
     private int mChoiceMode;
 
     private RecyclerView.Adapter mAdapter;
@@ -44,6 +50,21 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, itemCount, 0);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart + itemCount, -itemCount, itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +74,8 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        // Keeps the checked positions in step with the ids when rows are added or removed
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -72,7 +95,7 @@ public class ItemChoiceManager {
      * If there is a value for a given key, the checked state for that ID is true
      * and the value holds the last known position in the adapter for that id.
      */
-    LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
+    LongIntHashMap mCheckedIdStates = new LongIntHashMap();
 
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
@@ -108,7 +131,13 @@ public class ItemChoiceManager {
             }
             case AbsListView.CHOICE_MODE_MULTIPLE: {
                 boolean checked = mCheckStates.get(position, false);
-                mCheckStates.put(position, !checked);
+                if (checked) {
+                    mCheckStates.delete(position);
+                    mCheckedIdStates.remove(mAdapter.getItemId(position));
+                } else {
+                    mCheckStates.put(position, true);
+                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
+                }
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
@@ -158,12 +187,16 @@ public class ItemChoiceManager {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
-        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
-            final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
+        long[] lostIds = null;
+        int lostCount = 0;
+        for (int slot = 0; slot < mCheckedIdStates.capacity(); slot++) {
+            if (!mCheckedIdStates.isUsed(slot)) {
+                continue;
+            }
+            final long id = mCheckedIdStates.keyAt(slot);
+            final int lastPos = mCheckedIdStates.valueAt(slot);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
+            if (lastPos >= oldItemCount || id != mAdapter.getItemId(lastPos)) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
                 final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
@@ -173,19 +206,65 @@ public class ItemChoiceManager {
                     if (id == searchId) {
                         found = true;
                         mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
+                        mCheckedIdStates.setValueAt(slot, searchPos);
                         break;
                     }
                 }
 
                 if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
+                    // Entries can't be removed while going through the slots
+                    if (lostIds == null) {
+                        lostIds = new long[mCheckedIdStates.size()];
+                    }
+                    lostIds[lostCount++] = id;
                 }
             } else {
                 mCheckStates.put(lastPos, true);
             }
         }
+        for (int i = 0; i < lostCount; i++) {
+            mCheckedIdStates.remove(lostIds[i]);
+        }
+    }
+
+    /**
+     * Moves the checked positions from {@code fromPosition} onward by {@code offset}, after rows
+     * were inserted or removed.  The {@code removedCount} positions just before
+     * {@code fromPosition} were removed, so they are unchecked.  Only the checked items are
+     * looked at, however long the list is.
+     */
+    void offsetCheckedPositions(int fromPosition, int offset, int removedCount) {
+        final int removedStart = fromPosition - removedCount;
+        SparseBooleanArray checkStates = new SparseBooleanArray(mCheckStates.size());
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int position = mCheckStates.keyAt(i);
+            if (position >= fromPosition) {
+                checkStates.put(position + offset, mCheckStates.valueAt(i));
+            } else if (position < removedStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        long[] removedIds = null;
+        int removedIdCount = 0;
+        for (int slot = 0; slot < mCheckedIdStates.capacity(); slot++) {
+            if (!mCheckedIdStates.isUsed(slot)) {
+                continue;
+            }
+            int position = mCheckedIdStates.valueAt(slot);
+            if (position >= fromPosition) {
+                mCheckedIdStates.setValueAt(slot, position + offset);
+            } else if (position >= removedStart) {
+                if (removedIds == null) {
+                    removedIds = new long[mCheckedIdStates.size()];
+                }
+                removedIds[removedIdCount++] = mCheckedIdStates.keyAt(slot);
+            }
+        }
+        for (int i = 0; i < removedIdCount; i++) {
+            mCheckedIdStates.remove(removedIds[i]);
+        }
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
@@ -197,34 +276,49 @@ public class ItemChoiceManager {
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
-        byte[] states = savedInstanceState.getByteArray(SELECTED_ITEMS_KEY);
-        if ( null != states ) {
-            Parcel inParcel = Parcel.obtain();
-            inParcel.unmarshall(states, 0, states.length);
-            inParcel.setDataPosition(0);
-            mCheckStates = inParcel.readSparseBooleanArray();
-            final int numStates = inParcel.readInt();
-            mCheckedIdStates.clear();
-            for (int i=0; i<numStates; i++) {
-                final long key = inParcel.readLong();
-                final int value = inParcel.readInt();
-                mCheckedIdStates.put(key, value);
-            }
+        if (savedInstanceState.getInt(STATE_VERSION_KEY) != STATE_VERSION) {
+            return;
+        }
+        int[] positions = savedInstanceState.getIntArray(CHECKED_POSITIONS_KEY);
+        long[] ids = savedInstanceState.getLongArray(CHECKED_IDS_KEY);
+        int[] idPositions = savedInstanceState.getIntArray(CHECKED_ID_POSITIONS_KEY);
+        if (null == positions || null == ids || null == idPositions
+                || ids.length != idPositions.length) {
+            return;
+        }
+        mCheckStates.clear();
+        for (int position : positions) {
+            mCheckStates.put(position, true);
+        }
+        mCheckedIdStates.clear();
+        for (int i = 0; i < ids.length; i++) {
+            mCheckedIdStates.put(ids[i], idPositions[i]);
         }
     }
 
     public void onSaveInstanceState(Bundle outState) {
-        Parcel outParcel = Parcel.obtain();
-        outParcel.writeSparseBooleanArray(mCheckStates);
-        final int numStates = mCheckedIdStates.size();
-        outParcel.writeInt(numStates);
-        for (int i=0; i<numStates; i++) {
-            outParcel.writeLong(mCheckedIdStates.keyAt(i));
-            outParcel.writeInt(mCheckedIdStates.valueAt(i));
-        }
-        byte[] states = outParcel.marshall();
-        outState.putByteArray(SELECTED_ITEMS_KEY, states);
-        outParcel.recycle();
+        // Only checked positions are kept, so the positions alone are enough
+        int checkedCount = 0;
+        int[] positions = new int[mCheckStates.size()];
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            if (mCheckStates.valueAt(i)) {
+                positions[checkedCount++] = mCheckStates.keyAt(i);
+            }
+        }
+        long[] ids = new long[mCheckedIdStates.size()];
+        int[] idPositions = new int[ids.length];
+        int i = 0;
+        for (int slot = 0; slot < mCheckedIdStates.capacity(); slot++) {
+            if (mCheckedIdStates.isUsed(slot)) {
+                ids[i] = mCheckedIdStates.keyAt(slot);
+                idPositions[i] = mCheckedIdStates.valueAt(slot);
+                i++;
+            }
+        }
+        outState.putInt(STATE_VERSION_KEY, STATE_VERSION);
+        outState.putIntArray(CHECKED_POSITIONS_KEY, Arrays.copyOf(positions, checkedCount));
+        outState.putLongArray(CHECKED_IDS_KEY, ids);
+        outState.putIntArray(CHECKED_ID_POSITIONS_KEY, idPositions);
     }
 
     public int getSelectedItemPosition() {
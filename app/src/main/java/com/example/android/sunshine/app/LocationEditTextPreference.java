@@ -20,16 +20,45 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
 
+import com.example.android.sunshine.app.data.CityIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Location preference which suggests cities from the offline {@link CityIndex} as they are typed,
+ * and stores a picked city as the canonical location setting the weather service expects, so a
+ * misspelled or ambiguous name doesn't cost a sync that fails.  Other values, such as postal
+ * codes, are still accepted as typed.
+ */
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    private static final int MAX_SUGGESTIONS = 5;
+
+    // Lookups run one at a time, and the results for text that has since changed are dropped
+    private static final ExecutorService sLookupExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
     private int mMinLength;
+    private ArrayAdapter<CityIndex.City> mSuggestionsAdapter;
+    private List<CityIndex.City> mSuggestions = new ArrayList<>();
+    private String mSuggestionsText = "";
 
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -45,6 +74,82 @@ public class LocationEditTextPreference extends EditTextPreference {
     }
 
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+        ViewGroup container = (ViewGroup) editText.getParent();
+        if (container == null) {
+            return;
+        }
+        mSuggestionsAdapter = new ArrayAdapter<>(getContext(),
+                android.R.layout.simple_list_item_1, new ArrayList<CityIndex.City>());
+        ListView suggestionsView = new ListView(getContext());
+        suggestionsView.setAdapter(mSuggestionsAdapter);
+        suggestionsView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                EditText et = getEditText();
+                et.setText(mSuggestionsAdapter.getItem(position).getLocationSetting());
+                et.setSelection(et.length());
+            }
+        });
+        container.addView(suggestionsView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (positiveResult) {
+            // Store a city named exactly as the weather service knows it
+            String typed = getEditText().getText().toString();
+            if (typed.equals(mSuggestionsText)) {
+                CityIndex.City city = CityIndex.findExact(mSuggestions, typed);
+                if (city != null) {
+                    getEditText().setText(city.getLocationSetting());
+                }
+            }
+        }
+        super.onDialogClosed(positiveResult);
+    }
+
+    /**
+     * Looks up the cities matching the text in the background, and shows them once found.
+     */
+    private void updateSuggestions(final String text) {
+        if (text.length() < mMinLength) {
+            showSuggestions(text, new ArrayList<CityIndex.City>());
+            return;
+        }
+        final CityIndex index = CityIndex.getInstance(getContext());
+        sLookupExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<CityIndex.City> cities = index.suggest(text, MAX_SUGGESTIONS);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        showSuggestions(text, cities);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showSuggestions(String text, List<CityIndex.City> cities) {
+        if (!text.equals(getEditText().getText().toString())) {
+            // Typing went on while this was looked up
+            return;
+        }
+        mSuggestionsText = text;
+        mSuggestions = cities;
+        if (mSuggestionsAdapter != null) {
+            mSuggestionsAdapter.clear();
+            for (CityIndex.City city : cities) {
+                mSuggestionsAdapter.add(city);
+            }
+        }
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
@@ -65,6 +170,7 @@ public class LocationEditTextPreference extends EditTextPreference {
 
             @Override
             public void afterTextChanged(Editable s) {
+                updateSuggestions(s.toString());
                 Dialog d = getDialog();
                 if (d instanceof AlertDialog) {
                     AlertDialog dialog = (AlertDialog) d;
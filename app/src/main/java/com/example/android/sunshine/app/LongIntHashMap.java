@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to int values, kept in primitive arrays so that neither is boxed.
+ *
+ * Collisions are resolved by linear probing, and removals shift the following entries back
+ * instead of leaving tombstones, so lookups never slow down as entries come and go.  Slots can
+ * be iterated from 0 to {@link #capacity()}, skipping those for which {@link #isUsed(int)} is
+ * false.
+ */
+class LongIntHashMap {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private boolean[] mUsed;
+    private int mSize;
+
+    LongIntHashMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mUsed = new boolean[capacity];
+        mSize = 0;
+    }
+
+    private int slotFor(long key) {
+        // Mix the bits, since ids such as dates differ mostly in their high bits
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (mKeys.length - 1);
+    }
+
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        for (int slot = slotFor(key); mUsed[slot]; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    public int get(long key, int valueIfKeyNotFound) {
+        int slot = find(key);
+        return slot >= 0 ? mValues[slot] : valueIfKeyNotFound;
+    }
+
+    public void put(long key, int value) {
+        int slot = find(key);
+        if (slot >= 0) {
+            mValues[slot] = value;
+            return;
+        }
+        // Keep the table at most half full, so probe sequences stay short
+        if ((mSize + 1) * 2 > mKeys.length) {
+            long[] keys = mKeys;
+            int[] values = mValues;
+            boolean[] used = mUsed;
+            allocate(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i]) {
+                    put(keys[i], values[i]);
+                }
+            }
+        }
+        int mask = mKeys.length - 1;
+        slot = slotFor(key);
+        while (mUsed[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        mUsed[slot] = true;
+        mSize++;
+    }
+
+    public void remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return;
+        }
+        removeAt(slot);
+    }
+
+    /**
+     * Removes the entry in the given slot.  Other entries may be moved between slots to fill the
+     * gap, so entries can't be removed while iterating over the slots.
+     */
+    private void removeAt(int slot) {
+        int mask = mKeys.length - 1;
+        mUsed[slot] = false;
+        mSize--;
+        // Move back every following entry whose probe sequence passes through the freed slot
+        int free = slot;
+        for (int next = (free + 1) & mask; mUsed[next]; next = (next + 1) & mask) {
+            int home = slotFor(mKeys[next]);
+            boolean reachable = free <= next
+                    ? home <= free || home > next
+                    : home <= free && home > next;
+            if (reachable) {
+                mKeys[free] = mKeys[next];
+                mValues[free] = mValues[next];
+                mUsed[free] = true;
+                mUsed[next] = false;
+                free = next;
+            }
+        }
+    }
+
+    public void clear() {
+        if (mSize == 0) {
+            return;
+        }
+        if (mKeys.length > MIN_CAPACITY * 4) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(mUsed, false);
+            mSize = 0;
+        }
+    }
+
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return mUsed[slot];
+    }
+
+    public long keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return mValues[slot];
+    }
+
+    public void setValueAt(int slot, int value) {
+        mValues[slot] = value;
+    }
+}
@@ -22,6 +22,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
@@ -32,14 +33,17 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncScheduler;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesUtil;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 
 public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
 
@@ -57,11 +61,16 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private boolean mTwoPane;
     private String mLocation;
     private GoogleCloudMessaging mGcm;
+    private boolean mDeferredInitDone;
+    private DeferredInitTask mDeferredInitTask;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Usually already loaded by SunshineApplication, so this shouldn't wait on the disk
+        long step = StartupTracer.beginStep();
         mLocation = Utility.getPreferredLocation(this);
+        StartupTracer.endStep("getPreferredLocation", step);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
         setContentView(R.layout.activity_main);
@@ -101,21 +110,105 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // Nothing else is needed to show the forecast, so the rest of the initialization waits
+        // until the first frame is on screen
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs once the frame being prepared has been drawn
+                decorView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        StartupTracer.markFirstFrame();
+                        startDeferredInit();
+                    }
+                });
+                return true;
+            }
+        });
+    }
 
-        // If Google Play Services is not available, some features, such as GCM-powered weather
-        // alerts, will not be available.
-        if (checkPlayServices()) {
-            mGcm = GoogleCloudMessaging.getInstance(this);
-            String regId = getRegistrationId(this);
+    /**
+     * Sets up the sync account, checks for Google Play Services and looks up the GCM
+     * registration off the main thread.  Only the Play Services error dialog and the GCM
+     * registration are started back on the main thread.
+     */
+    private void startDeferredInit() {
+        mDeferredInitTask = new DeferredInitTask(this);
+        mDeferredInitTask.execute();
+    }
 
-            if (regId.isEmpty()) {
-                registerInBackground(this);
+    /**
+     * Called on the main thread once the deferred initialization is done, unless the activity
+     * was destroyed meanwhile.
+     */
+    private void onDeferredInitDone(int playServicesResult, boolean needsRegistration) {
+        mDeferredInitTask = null;
+        mDeferredInitDone = true;
+        if (isFinishing()
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    && isChangingConfigurations())
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                    && isDestroyed())) {
+            // The dialog can't be shown on this instance, the next one runs its own check
+            return;
+        }
+        // If Google Play Services is not available, some features, such as GCM-powered
+        // weather alerts, will not be available.
+        if (handlePlayServicesResult(playServicesResult)) {
+            Context context = getApplicationContext();
+            mGcm = GoogleCloudMessaging.getInstance(context);
+            if (needsRegistration) {
+                registerInBackground(context);
             }
         } else {
             Log.i(LOG_TAG, "No valid Google Play Services APK. Weather alerts will be disabled.");
-            // Store regID as null
-            storeRegistrationId(this, null);
+        }
+    }
+
+    /**
+     * Runs the deferred initialization.  Only holds the activity weakly, since it can be
+     * destroyed, e.g. by a rotation, before the task is done.
+     */
+    private static class DeferredInitTask extends AsyncTask<Void, Void, Integer> {
+        private final Context mContext;
+        private final WeakReference<MainActivity> mActivity;
+        private boolean mNeedsRegistration;
+
+        DeferredInitTask(MainActivity activity) {
+            mContext = activity.getApplicationContext();
+            mActivity = new WeakReference<>(activity);
+        }
+
+        @Override
+        protected Integer doInBackground(Void... params) {
+            long step = StartupTracer.beginStep();
+            SunshineSyncAdapter.initializeSyncAdapter(mContext);
+            StartupTracer.endStep("initializeSyncAdapter", step);
+
+            step = StartupTracer.beginStep();
+            int playServicesResult = GooglePlayServicesUtil.isGooglePlayServicesAvailable(mContext);
+            StartupTracer.endStep("checkPlayServices", step);
+
+            step = StartupTracer.beginStep();
+            if (playServicesResult == ConnectionResult.SUCCESS) {
+                mNeedsRegistration = getRegistrationId(mContext).isEmpty();
+            } else {
+                // Store regID as null
+                storeRegistrationId(mContext, null);
+            }
+            StartupTracer.endStep("getRegistrationId", step);
+            return playServicesResult;
+        }
+
+        @Override
+        protected void onPostExecute(Integer playServicesResult) {
+            MainActivity activity = mActivity.get();
+            if (activity != null) {
+                activity.onDeferredInitDone(playServicesResult, mNeedsRegistration);
+            }
         }
     }
 
@@ -123,6 +216,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_diagnostics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -138,16 +232,31 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
         }
+        if (id == R.id.action_diagnostics) {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onDestroy() {
+        if (mDeferredInitTask != null) {
+            // The initialization itself still completes, only its result is dropped
+            mDeferredInitTask.cancel(false);
+            mDeferredInitTask = null;
+        }
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        SyncScheduler.recordAppOpen(this);
 
         // If Google Play Services is not available, some features, such as GCM-powered weather
-        // alerts, will not be available.
-        if (!checkPlayServices()) {
+        // alerts, will not be available.  The first check is part of the deferred initialization.
+        if (mDeferredInitDone && !checkPlayServices()) {
             // Store regID as null
         }
 
@@ -198,7 +307,16 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
      * the Google Play Store or enable it in the device's system settings.
      */
     private boolean checkPlayServices() {
-        int resultCode = GooglePlayServicesUtil.isGooglePlayServicesAvailable(this);
+        return handlePlayServicesResult(GooglePlayServicesUtil.isGooglePlayServicesAvailable(this));
+    }
+
+    /**
+     * Shows the dialog or closes the activity as appropriate for the result of a Google Play
+     * Services availability check.  Must be called on the main thread.
+     *
+     * @return true if Google Play Services are available
+     */
+    private boolean handlePlayServicesResult(int resultCode) {
         if (resultCode != ConnectionResult.SUCCESS) {
             if (GooglePlayServicesUtil.isUserRecoverableError(resultCode)) {
                 GooglePlayServicesUtil.getErrorDialog(resultCode, this,
@@ -220,7 +338,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
      * @return registration ID, or empty string if there is no existing
      *         registration ID.
      */
-    private String getRegistrationId(Context context) {
+    private static String getRegistrationId(Context context) {
         final SharedPreferences prefs = getGCMPreferences(context);
         String registrationId = prefs.getString(PROPERTY_REG_ID, "");
         if (registrationId.isEmpty()) {
@@ -243,11 +361,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     /**
      * @return Application's {@code SharedPreferences}.
      */
-    private SharedPreferences getGCMPreferences(Context context) {
+    private static SharedPreferences getGCMPreferences(Context context) {
         // Sunshine persists the registration ID in shared preferences, but
         // how you store the registration ID in your app is up to you. Just make sure
         // that it is private!
-        return getSharedPreferences(MainActivity.class.getSimpleName(), Context.MODE_PRIVATE);
+        return context.getSharedPreferences(MainActivity.class.getSimpleName(), Context.MODE_PRIVATE);
     }
 
     /**
@@ -311,7 +429,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
      * @param context application's context.
      * @param regId registration ID
      */
-    private void storeRegistrationId(Context context, String regId) {
+    private static void storeRegistrationId(Context context, String regId) {
         final SharedPreferences prefs = getGCMPreferences(context);
         int appVersion = getAppVersion(context);
         Log.i(LOG_TAG, "Saving regId on app version " + appVersion);
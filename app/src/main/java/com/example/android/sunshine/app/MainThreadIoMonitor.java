@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Build;
+import android.os.StrictMode;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Detects disk and network access on the main thread in debug builds, and counts it by the call
+ * site in the app which made it.  The counts are shown by {@link DiagnosticsActivity}, and the
+ * tests fail when a call site they don't know about shows up.
+ *
+ * StrictMode does the detecting.  It only hands violations to the app from API 28, through a
+ * listener interface this build can't name, so the listener is set up by reflection.  On older
+ * devices the violations StrictMode logged for this process are read back from logcat instead,
+ * whenever the counts are asked for.  Reading the log runs a process, so don't ask for them on
+ * the main thread.
+ */
+public class MainThreadIoMonitor {
+    private static final String LOG_TAG = MainThreadIoMonitor.class.getSimpleName();
+
+    private static final String APP_PACKAGE = "com.example.android.sunshine.app.";
+    public static final String UNKNOWN_CALL_SITE = "unknown";
+
+    // What penaltyLog() writes, with logcat's brief format: a line starting the violation and
+    // naming its kind, then a line for each frame of its stack
+    private static final String[] LOGCAT_COMMAND =
+            {"logcat", "-d", "-v", "brief", "-s", "StrictMode:*"};
+    private static final Pattern LOG_LINE = Pattern.compile("^\\w/StrictMode\\(\\s*(\\d+)\\): (.*)$");
+    private static final Pattern LOG_VIOLATION = Pattern.compile("StrictMode\\$StrictMode(\\w+Violation)");
+    private static final Pattern LOG_FRAME = Pattern.compile("^\\s*at ([\\w$.]+)\\.([\\w$<>]+)\\(");
+
+    private static volatile boolean sCollecting;
+    private static volatile boolean sReadingLog;
+    // All guarded by the class lock
+    private static final LinkedHashMap<String, Integer> sCounts = new LinkedHashMap<>();
+    private static final HashMap<String, TreeSet<String>> sKinds = new HashMap<>();
+    // Violations in the log from before the last reset, which aren't counted
+    private static int sLogViolationsSkipped;
+
+    private MainThreadIoMonitor() {
+    }
+
+    /**
+     * Called on the main thread by {@link SunshineApplication}, as early as possible.
+     */
+    static void install() {
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+        StrictMode.ThreadPolicy.Builder builder = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog();
+        sCollecting = setPenaltyListener(builder);
+        // An app can read its own process's log from Jelly Bean
+        if (!sCollecting && Build.VERSION.SDK_INT >= 16) {
+            sReadingLog = true;
+            sCollecting = true;
+        }
+        StrictMode.setThreadPolicy(builder.build());
+    }
+
+    private static boolean setPenaltyListener(StrictMode.ThreadPolicy.Builder builder) {
+        if (Build.VERSION.SDK_INT < 28) {
+            return false;
+        }
+        try {
+            Class<?> listenerClass =
+                    Class.forName("android.os.StrictMode$OnThreadViolationListener");
+            Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(),
+                    new Class<?>[]{listenerClass}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            switch (method.getName()) {
+                                case "onThreadViolation":
+                                    record((Throwable) args[0]);
+                                    return null;
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    return LOG_TAG;
+                            }
+                        }
+                    });
+            // Record the violation on the thread which made it, while it's still on the stack
+            Executor direct = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            };
+            StrictMode.ThreadPolicy.Builder.class
+                    .getMethod("penaltyListener", Executor.class, listenerClass)
+                    .invoke(builder, direct, listener);
+            return true;
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException e) {
+            Log.w(LOG_TAG, "Can't collect StrictMode violations", e);
+            return false;
+        }
+    }
+
+    static void record(Throwable violation) {
+        record(violation.getStackTrace(), violation.getClass().getSimpleName());
+    }
+
+    private static synchronized void record(StackTraceElement[] stack, String kind) {
+        String callSite = getCallSite(stack);
+        Integer count = sCounts.get(callSite);
+        sCounts.put(callSite, count == null ? 1 : count + 1);
+        TreeSet<String> kinds = sKinds.get(callSite);
+        if (kinds == null) {
+            kinds = new TreeSet<>();
+            sKinds.put(callSite, kinds);
+        }
+        kinds.add(kind);
+    }
+
+    /**
+     * Counts again the violations StrictMode logged for this process since the last reset.
+     */
+    private static synchronized void readLog() {
+        ArrayList<String> lines = new ArrayList<>();
+        Process logcat = null;
+        try {
+            logcat = Runtime.getRuntime().exec(LOGCAT_COMMAND);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(logcat.getInputStream()));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Can't read the StrictMode log", e);
+            return;
+        } finally {
+            if (logcat != null) {
+                logcat.destroy();
+            }
+        }
+
+        sCounts.clear();
+        sKinds.clear();
+        String pid = Integer.toString(android.os.Process.myPid());
+        int violations = 0;
+        String kind = null;
+        ArrayList<StackTraceElement> stack = new ArrayList<>();
+        for (String line : lines) {
+            Matcher matcher = LOG_LINE.matcher(line);
+            if (!matcher.matches() || !pid.equals(matcher.group(1))) {
+                continue;
+            }
+            String message = matcher.group(2);
+            Matcher violation = LOG_VIOLATION.matcher(message);
+            Matcher frame = LOG_FRAME.matcher(message);
+            // Frames are matched first, the constructor of the violation can be one of them
+            if (frame.find()) {
+                if (kind != null) {
+                    stack.add(new StackTraceElement(frame.group(1), frame.group(2), null, -1));
+                }
+            } else if (violation.find()) {
+                if (kind != null && ++violations > sLogViolationsSkipped) {
+                    record(stack.toArray(new StackTraceElement[stack.size()]), kind);
+                }
+                kind = violation.group(1);
+                stack.clear();
+            }
+        }
+        if (kind != null && ++violations > sLogViolationsSkipped) {
+            record(stack.toArray(new StackTraceElement[stack.size()]), kind);
+        }
+    }
+
+    /**
+     * @return the number of violations StrictMode logged for this process
+     */
+    private static synchronized int countLoggedViolations() {
+        int skipped = sLogViolationsSkipped;
+        sLogViolationsSkipped = 0;
+        readLog();
+        sLogViolationsSkipped = skipped;
+        int violations = 0;
+        for (int count : sCounts.values()) {
+            violations += count;
+        }
+        return violations;
+    }
+
+    /**
+     * @return the innermost app method on the stack, as Class.method without the package
+     */
+    static String getCallSite(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            if (className.startsWith(APP_PACKAGE)
+                    && !className.startsWith(MainThreadIoMonitor.class.getName())) {
+                return className.substring(APP_PACKAGE.length()) + "." + frame.getMethodName();
+            }
+        }
+        return UNKNOWN_CALL_SITE;
+    }
+
+    /**
+     * @return whether violations are being counted, which they aren't in release builds or
+     * before API 16
+     */
+    public static boolean isCollecting() {
+        return sCollecting;
+    }
+
+    /**
+     * @return the number of violations of each call site so far, in the order they first came
+     */
+    public static synchronized Map<String, Integer> getCallSites() {
+        if (sReadingLog) {
+            readLog();
+        }
+        return Collections.unmodifiableMap(new LinkedHashMap<>(sCounts));
+    }
+
+    public static synchronized void reset() {
+        if (sReadingLog) {
+            sLogViolationsSkipped = countLoggedViolations();
+        }
+        sCounts.clear();
+        sKinds.clear();
+    }
+
+    /**
+     * @return the call sites, the most frequent first, one per line with their count and the
+     * kinds of violation they made
+     */
+    public static synchronized String getReport() {
+        if (sReadingLog) {
+            readLog();
+        }
+        ArrayList<Map.Entry<String, Integer>> entries = new ArrayList<>(sCounts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> lhs, Map.Entry<String, Integer> rhs) {
+                return rhs.getValue().compareTo(lhs.getValue());
+            }
+        });
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : entries) {
+            report.append(entry.getValue()).append('\t').append(entry.getKey())
+                    .append(' ').append(sKinds.get(entry.getKey())).append('\n');
+        }
+        return report.toString();
+    }
+}
@@ -27,6 +27,7 @@ import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStateStore;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -57,6 +58,8 @@ public class SettingsActivity extends PreferenceActivity
     protected void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.registerOnSharedPreferenceChangeListener(this);
+        // The location status is kept apart from the settings
+        SyncStateStore.registerListener(this, this);
         super.onResume();
     }
 
@@ -65,6 +68,7 @@ public class SettingsActivity extends PreferenceActivity
     protected void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        SyncStateStore.unregisterListener(this, this);
         super.onPause();
     }
 
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records how long the app takes to start: the time from process start to the first frame of
+ * {@link MainActivity}, to the first forecast row on screen, and the time spent in each step of
+ * the deferred initialization.  All times are in milliseconds.
+ */
+public class StartupTracer {
+    private static final String LOG_TAG = StartupTracer.class.getSimpleName();
+
+    public static final long NOT_REACHED = -1;
+
+    // All guarded by the class lock
+    private static long sProcessStart = NOT_REACHED;
+    private static long sFirstFrame = NOT_REACHED;
+    private static long sFirstForecastRow = NOT_REACHED;
+    private static final LinkedHashMap<String, Long> sSteps = new LinkedHashMap<>();
+    private static final HashSet<String> sMainThreadSteps = new HashSet<>();
+
+    private StartupTracer() {
+    }
+
+    /**
+     * Called as early as possible in the process, by {@link SunshineApplication}.
+     */
+    static synchronized void markProcessStart() {
+        sProcessStart = SystemClock.elapsedRealtime();
+        sFirstFrame = NOT_REACHED;
+        sFirstForecastRow = NOT_REACHED;
+        sSteps.clear();
+        sMainThreadSteps.clear();
+    }
+
+    static synchronized void markFirstFrame() {
+        if (sFirstFrame == NOT_REACHED && sProcessStart != NOT_REACHED) {
+            sFirstFrame = SystemClock.elapsedRealtime() - sProcessStart;
+            Log.i(LOG_TAG, "First frame after " + sFirstFrame + " ms");
+        }
+    }
+
+    static synchronized void markFirstForecastRow() {
+        if (sFirstForecastRow == NOT_REACHED && sProcessStart != NOT_REACHED) {
+            sFirstForecastRow = SystemClock.elapsedRealtime() - sProcessStart;
+            Log.i(LOG_TAG, "First forecast row after " + sFirstForecastRow + " ms");
+        }
+    }
+
+    /**
+     * @return a token to pass to {@link #endStep(String, long)}
+     */
+    static long beginStep() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    static synchronized void endStep(String step, long token) {
+        long duration = SystemClock.elapsedRealtime() - token;
+        sSteps.put(step, duration);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            sMainThreadSteps.add(step);
+        } else {
+            sMainThreadSteps.remove(step);
+        }
+        Log.i(LOG_TAG, step + " took " + duration + " ms");
+    }
+
+    /**
+     * @return the time from process start to the first frame, or {@link #NOT_REACHED}
+     */
+    public static synchronized long getTimeToFirstFrame() {
+        return sFirstFrame;
+    }
+
+    /**
+     * @return the time from process start to the first forecast row, or {@link #NOT_REACHED}
+     */
+    public static synchronized long getTimeToFirstForecastRow() {
+        return sFirstForecastRow;
+    }
+
+    /**
+     * @return the duration of each initialization step completed so far, in execution order
+     */
+    public static synchronized Map<String, Long> getStepDurations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(sSteps));
+    }
+
+    /**
+     * @return the steps completed so far which ran on the main thread
+     */
+    public static synchronized Set<String> getMainThreadSteps() {
+        return Collections.unmodifiableSet(new HashSet<>(sMainThreadSteps));
+    }
+}
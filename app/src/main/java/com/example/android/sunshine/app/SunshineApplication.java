@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Application;
+import android.preference.PreferenceManager;
+
+public class SunshineApplication extends Application {
+    @Override
+    public void onCreate() {
+        StartupTracer.markProcessStart();
+        super.onCreate();
+        MainThreadIoMonitor.install();
+        // Getting the preferences starts loading them from disk in the background, so they're
+        // usually ready by the time MainActivity reads the location
+        PreferenceManager.getDefaultSharedPreferences(this);
+    }
+}
@@ -23,6 +23,7 @@ import android.preference.PreferenceManager;
 import android.text.format.Time;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStateStore;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -561,8 +562,7 @@ public class Utility {
     @SuppressWarnings("ResourceType")
     static public @SunshineSyncAdapter.LocationStatus
     int getLocationStatus(Context c){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        return sp.getInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        return SyncStateStore.getLocationStatus(c);
     }
 
     /**
@@ -570,9 +570,6 @@ public class Utility {
      * @param c Context used to get the SharedPreferences
      */
     static public void resetLocationStatus(Context c){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
-        spe.apply();
+        SyncStateStore.setLocationStatus(c, SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
     }
 }
\ No newline at end of file
@@ -3,18 +3,17 @@ package com.example.android.sunshine.app;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SyncStateStore;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.PutDataMapRequest;
@@ -27,17 +26,6 @@ import java.util.concurrent.ExecutionException;
 
 public class WearableUpdaterService extends IntentService {
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-
     GoogleApiClient mGoogleApiClient;
 
     public WearableUpdaterService() {
@@ -48,22 +36,16 @@ public class WearableUpdaterService extends IntentService {
     protected void onHandleIntent(Intent intent) {
         if (intent != null) {
             Context context = this;
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-            String prevLowTempKey = context.getString(R.string.pref_prev_low_temp);
-            String prevHighTempKey = context.getString(R.string.pref_prev_high_temp);
-            String prevArtKey = context.getString(R.string.pref_prev_art);
-            String prevLowTemp = prefs.getString(prevLowTempKey, null);
-            String prevHighTemp = prefs.getString(prevHighTempKey, null);
-            String prevArt = prefs.getString(prevArtKey, null);
-
             String locationQuery = Utility.getPreferredLocation(context);
-            Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-            Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-            if (cursor.moveToFirst()) {
-                final String curLowTemp = Utility.formatTemperature(context, cursor.getDouble(INDEX_MIN_TEMP));
-                final String curHighTemp = Utility.formatTemperature(context, cursor.getDouble(INDEX_MAX_TEMP));
-                int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            ForecastSnapshot snapshot = ForecastSnapshot.open(context, locationQuery);
+            long now = System.currentTimeMillis();
+            int today = snapshot == null ? 0 : snapshot.getFirstPositionFrom(now);
+
+            if (snapshot != null && today < snapshot.getCount()
+                    && snapshot.getDate(today) == WeatherContract.normalizeDate(now)) {
+                final String curLowTemp = Utility.formatTemperature(context, snapshot.getLow(today));
+                final String curHighTemp = Utility.formatTemperature(context, snapshot.getHigh(today));
+                int weatherId = snapshot.getWeatherId(today);
                 final String curArt = Utility.getArtUrlForWeatherCondition(context, weatherId);
                 int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
 
@@ -72,6 +54,7 @@ public class WearableUpdaterService extends IntentService {
                     icon = Glide.with(context)
                             .load(curArt)
                             .asBitmap()
+                            .diskCacheStrategy(DiskCacheStrategy.ALL)
                             .error(artResourceId)
                             .fitCenter()
                             .into(90, 90).get();
@@ -81,9 +64,7 @@ public class WearableUpdaterService extends IntentService {
                 final Bitmap finalIcon = icon;
 
                 if (intent.getBooleanExtra("force", false) ||
-                        !curLowTemp.equals(prevLowTemp) ||
-                        !curHighTemp.equals(prevHighTemp) ||
-                        !(curArt != null && curArt.equals(prevArt))) {
+                        SyncStateStore.isWearDataChanged(context, curLowTemp, curHighTemp, curArt)) {
                     if (mGoogleApiClient != null) {
                         putData(curLowTemp, curHighTemp, finalIcon);
                     } else {
@@ -105,14 +86,8 @@ public class WearableUpdaterService extends IntentService {
                     }
                 }
 
-                SharedPreferences.Editor editor = prefs.edit();
-                editor.putString(prevLowTempKey, curLowTemp);
-                editor.putString(prevHighTempKey, curHighTemp);
-                editor.putString(prevArtKey, curArt);
-                editor.commit();
+                SyncStateStore.setWearData(context, curLowTemp, curHighTemp, curArt);
             }
-
-            cursor.close();
         }
     }
 
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An offline index of the cities the weather service knows, for suggesting locations as they are
+ * typed.
+ *
+ * The cities are bundled in res/raw/cities.txt and indexed into an SQLite FTS3 table the first
+ * time the index is used, so lookups by word prefix don't scan the list.  Lookups read the
+ * database, so they belong on a background thread.
+ */
+public class CityIndex {
+    private static final String LOG_TAG = CityIndex.class.getSimpleName();
+
+    // Bump whenever res/raw/cities.txt changes, so the index is rebuilt
+    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "cities.db";
+
+    private static final String TABLE_NAME = "cities";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_COUNTRY = "country";
+
+    private static CityIndex sInstance;
+
+    private final CityDbHelper mOpenHelper;
+
+    /**
+     * A city of the index, along with the location setting which identifies it to the weather
+     * service.
+     */
+    public static class City {
+        public final String name;
+        public final String countryCode;
+
+        City(String name, String countryCode) {
+            this.name = name;
+            this.countryCode = countryCode;
+        }
+
+        /**
+         * @return the canonical location setting for the city, such as "London,GB"
+         */
+        public String getLocationSetting() {
+            return name + "," + countryCode;
+        }
+
+        @Override
+        public String toString() {
+            return name + ", " + countryCode;
+        }
+    }
+
+    private CityIndex(Context context) {
+        mOpenHelper = new CityDbHelper(context.getApplicationContext());
+    }
+
+    public static synchronized CityIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CityIndex(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Finds the cities whose name has words starting with each word of the given text, in order
+     * of how likely they are.  Only call this from a background thread.
+     *
+     * @param text What the user typed so far, optionally followed by a comma and a country code
+     * @param limit The maximum number of cities to return
+     */
+    public List<City> suggest(String text, int limit) {
+        ArrayList<City> cities = new ArrayList<>();
+        String match = buildMatch(text);
+        if (match == null) {
+            return cities;
+        }
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(TABLE_NAME,
+                new String[]{COLUMN_NAME, COLUMN_COUNTRY},
+                TABLE_NAME + " MATCH ?",
+                new String[]{match},
+                null, null,
+                // Cities were inserted most likely first
+                "rowid ASC",
+                Integer.toString(limit));
+        try {
+            while (cursor.moveToNext()) {
+                cities.add(new City(cursor.getString(0), cursor.getString(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return cities;
+    }
+
+    /**
+     * @return the city the given text names exactly, ignoring case, or null if there isn't one.
+     * "london" and "London, gb" both resolve to London, GB.
+     */
+    public static City findExact(List<City> cities, String text) {
+        String typed = text.trim();
+        for (City city : cities) {
+            if (city.name.equalsIgnoreCase(typed)
+                    || city.getLocationSetting().equalsIgnoreCase(typed.replaceAll("\\s*,\\s*", ","))) {
+                return city;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Turns the typed text into an FTS3 query which matches every word as a prefix, and the
+     * country code if one follows a comma.
+     *
+     * @return the query, or null if there's nothing to look up
+     */
+    static String buildMatch(String text) {
+        String name = text;
+        String country = null;
+        int comma = text.indexOf(',');
+        if (comma >= 0) {
+            name = text.substring(0, comma);
+            country = text.substring(comma + 1).replaceAll("[^\\p{L}\\p{N}]", "");
+        }
+        StringBuilder match = new StringBuilder();
+        // Anything but letters and digits could be FTS3 query syntax, so it only separates words
+        for (String word : name.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > 0) {
+                match.append(COLUMN_NAME).append(':')
+                        .append(word.toLowerCase(Locale.US)).append("* ");
+            }
+        }
+        if (match.length() == 0) {
+            return null;
+        }
+        if (country != null && country.length() > 0) {
+            match.append(COLUMN_COUNTRY).append(':')
+                    .append(country.toLowerCase(Locale.US)).append('*');
+        }
+        return match.toString().trim();
+    }
+
+    private static class CityDbHelper extends SQLiteOpenHelper {
+        private final Context mContext;
+
+        CityDbHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            mContext = context;
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_NAME + " USING fts3(" +
+                    COLUMN_NAME + ", " + COLUMN_COUNTRY + ");");
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME + " (" +
+                    COLUMN_NAME + ", " + COLUMN_COUNTRY + ") VALUES (?, ?)");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    mContext.getResources().openRawResource(R.raw.cities)));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0 || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    int tab = line.indexOf('\t');
+                    if (tab < 0) {
+                        continue;
+                    }
+                    insert.bindString(1, line.substring(0, tab));
+                    insert.bindString(2, line.substring(tab + 1));
+                    insert.executeInsert();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error reading the bundled cities", e);
+            } finally {
+                insert.close();
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing the bundled cities", e);
+                }
+            }
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // The index is built from the bundled list, so just build it again
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+            onCreate(db);
+        }
+    }
+}
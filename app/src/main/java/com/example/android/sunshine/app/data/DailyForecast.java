@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.Arrays;
+
+/**
+ * Consecutive days of the stored forecast of a location, in date order, as read by
+ * {@link ForecastRepository}.
+ *
+ * Each column is a primitive array, so reading a day boxes nothing, and the arrays are never
+ * handed out, so a forecast can't change once it has been read and can be shared between
+ * threads.  Nothing here depends on the Android classes.
+ */
+public final class DailyForecast {
+    public static final int NO_POSITION = -1;
+
+    static final DailyForecast EMPTY = new DailyForecast(0);
+
+    final long[] mDates;
+    final int[] mWeatherIds;
+    final double[] mHighs;
+    final double[] mLows;
+    final float[] mHumidities;
+    final float[] mPressures;
+    final float[] mWindSpeeds;
+    final float[] mDegrees;
+    final String[] mDescriptions;
+
+    /**
+     * Allocates the columns of the given number of days, which the repository then fills.
+     */
+    DailyForecast(int size) {
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mHighs = new double[size];
+        mLows = new double[size];
+        mHumidities = new float[size];
+        mPressures = new float[size];
+        mWindSpeeds = new float[size];
+        mDegrees = new float[size];
+        mDescriptions = new String[size];
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    /**
+     * @return the position of the day with the given normalized date, or {@link #NO_POSITION}
+     */
+    public int getPositionForDate(long date) {
+        int position = Arrays.binarySearch(mDates, date);
+        return position >= 0 ? position : NO_POSITION;
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    public double getHigh(int position) {
+        return mHighs[position];
+    }
+
+    public double getLow(int position) {
+        return mLows[position];
+    }
+
+    public float getHumidity(int position) {
+        return mHumidities[position];
+    }
+
+    public float getPressure(int position) {
+        return mPressures[position];
+    }
+
+    public float getWindSpeed(int position) {
+        return mWindSpeeds[position];
+    }
+
+    public float getDegrees(int position) {
+        return mDegrees[position];
+    }
+
+    public String getDescription(int position) {
+        return mDescriptions[position];
+    }
+}
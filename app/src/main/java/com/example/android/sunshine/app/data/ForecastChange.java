@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a write to the weather table changed: which location, which days, which columns, and
+ * whether days were added or removed rather than only updated.  Published by
+ * {@link ForecastChangeFeed}.
+ *
+ * A null location, set of days or set of columns means all of them.  A change is filled in by
+ * the provider before it's published, and never changes once it has been.
+ */
+public final class ForecastChange {
+    private final String mLocationSetting;
+    private TreeSet<Long> mDates = new TreeSet<>();
+    private HashSet<String> mColumns = new HashSet<>();
+    private boolean mRowsChanged;
+
+    ForecastChange(String locationSetting) {
+        mLocationSetting = locationSetting;
+    }
+
+    /**
+     * @return a change of every day of every location
+     */
+    static ForecastChange everything() {
+        ForecastChange change = new ForecastChange(null);
+        change.mDates = null;
+        change.mColumns = null;
+        change.mRowsChanged = true;
+        return change;
+    }
+
+    /**
+     * @return a copy of this change, of the given location
+     */
+    ForecastChange withLocation(String locationSetting) {
+        ForecastChange change = new ForecastChange(locationSetting);
+        change.mDates = mDates;
+        change.mColumns = mColumns;
+        change.mRowsChanged = mRowsChanged;
+        return change;
+    }
+
+    /**
+     * Adds the days added or removed by an insert or a delete.
+     *
+     * @param date The normalized date, or null if any day could have been
+     */
+    void addRows(Long date) {
+        mRowsChanged = true;
+        mColumns = null;
+        addDate(date);
+    }
+
+    /**
+     * Adds the columns updated on a day.
+     */
+    void addUpdate(Long date, Set<String> columns) {
+        addDate(date);
+        if (mColumns != null) {
+            mColumns.addAll(columns);
+        }
+    }
+
+    private void addDate(Long date) {
+        if (date == null) {
+            mDates = null;
+        } else if (mDates != null) {
+            mDates.add(date);
+        }
+    }
+
+    /**
+     * @return a change covering both of the given ones
+     */
+    static ForecastChange merge(ForecastChange a, ForecastChange b) {
+        String location = a.mLocationSetting != null
+                && a.mLocationSetting.equals(b.mLocationSetting) ? a.mLocationSetting : null;
+        ForecastChange merged = new ForecastChange(location);
+        merged.mRowsChanged = a.mRowsChanged || b.mRowsChanged;
+        if (location == null || a.mDates == null || b.mDates == null) {
+            merged.mDates = null;
+        } else {
+            merged.mDates.addAll(a.mDates);
+            merged.mDates.addAll(b.mDates);
+        }
+        if (a.mColumns == null || b.mColumns == null) {
+            merged.mColumns = null;
+        } else {
+            merged.mColumns.addAll(a.mColumns);
+            merged.mColumns.addAll(b.mColumns);
+        }
+        return merged;
+    }
+
+    /**
+     * @return the location whose weather changed, or null if it could be any
+     */
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public boolean isLocationChanged(String locationSetting) {
+        return mLocationSetting == null || mLocationSetting.equals(locationSetting);
+    }
+
+    /**
+     * @return whether the given normalized date may have changed
+     */
+    public boolean isDateChanged(long date) {
+        return mDates == null || mDates.contains(date);
+    }
+
+    /**
+     * @return the normalized dates which changed, in order, or null if any could have
+     */
+    public long[] getDates() {
+        if (mDates == null) {
+            return null;
+        }
+        long[] dates = new long[mDates.size()];
+        int i = 0;
+        for (Long date : mDates) {
+            dates[i++] = date;
+        }
+        return dates;
+    }
+
+    /**
+     * @return whether the given column of the weather table may have changed
+     */
+    public boolean isColumnChanged(String column) {
+        return mColumns == null || mColumns.contains(column);
+    }
+
+    /**
+     * @return whether days were added or removed, rather than only updated
+     */
+    public boolean areRowsChanged() {
+        return mRowsChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastChange{location=" + mLocationSetting + ", dates=" + mDates
+                + ", columns=" + mColumns + ", rowsChanged=" + mRowsChanged + "}";
+    }
+}
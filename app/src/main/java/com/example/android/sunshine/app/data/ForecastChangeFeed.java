@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes a {@link ForecastChange} for every write the provider makes to the weather table,
+ * so that a subscriber can tell what changed and update what it holds, rather than query
+ * everything again as a content observer has to.
+ *
+ * Changes are delivered on the main thread.  While a subscriber hasn't been delivered its last
+ * change, new ones are merged into it, so a subscriber that falls behind a burst of writes gets
+ * one change covering all of them instead of a queue of them.
+ *
+ * The provider runs in the app's process, so the feed only reaches subscribers in that process.
+ * Content observers still get notified as before.
+ */
+public class ForecastChangeFeed {
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final CopyOnWriteArrayList<Subscription> sSubscriptions =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Receives the changes of a subscription, on the main thread.
+     */
+    public interface Listener {
+        void onForecastChanged(ForecastChange change);
+    }
+
+    /**
+     * A listener's interest in the changes of a location, until it's cancelled.
+     */
+    public static class Subscription implements Runnable {
+        private final String mLocationSetting;
+        private final Listener mListener;
+        private volatile boolean mCancelled;
+        // Guarded by this
+        private ForecastChange mPending;
+
+        Subscription(String locationSetting, Listener listener) {
+            mLocationSetting = locationSetting;
+            mListener = listener;
+        }
+
+        /**
+         * Stops the deliveries, including one which is on its way.
+         */
+        public void cancel() {
+            mCancelled = true;
+            sSubscriptions.remove(this);
+        }
+
+        void offer(ForecastChange change) {
+            if (mLocationSetting != null && !change.isLocationChanged(mLocationSetting)) {
+                return;
+            }
+            synchronized (this) {
+                if (mPending != null) {
+                    // A delivery is already posted, it will carry this change as well
+                    mPending = ForecastChange.merge(mPending, change);
+                    return;
+                }
+                mPending = change;
+            }
+            sMainHandler.post(this);
+        }
+
+        @Override
+        public void run() {
+            ForecastChange change;
+            synchronized (this) {
+                change = mPending;
+                mPending = null;
+            }
+            if (!mCancelled && change != null) {
+                mListener.onForecastChanged(change);
+            }
+        }
+    }
+
+    private ForecastChangeFeed() {
+    }
+
+    /**
+     * Subscribes the listener to the changes of the given location.
+     *
+     * @param locationSetting The location, or null for the changes of every location
+     * @return the subscription, to cancel once the changes are no longer needed
+     */
+    public static Subscription subscribe(String locationSetting, Listener listener) {
+        Subscription subscription = new Subscription(locationSetting, listener);
+        sSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Called by the provider once a write has been committed.
+     */
+    static void publish(ForecastChange change) {
+        for (Subscription subscription : sSubscriptions) {
+            subscription.offer(change);
+        }
+    }
+}
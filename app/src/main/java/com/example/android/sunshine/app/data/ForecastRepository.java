@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the stored forecast as {@link DailyForecast}s, so that the rest of the app doesn't have
+ * to build projections and walk cursors itself.
+ *
+ * The forecasts read recently are cached by location, start date and number of days.  The
+ * provider runs in the app's process and drops the cached forecasts of a location before it
+ * notifies the location's observers, so whatever reloads on a notification reads the new rows.
+ */
+public class ForecastRepository {
+    private static final int MAX_CACHED_FORECASTS = 32;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
+    // must change.
+    private static final int COL_DATE = 0;
+    private static final int COL_WEATHER_ID = 1;
+    private static final int COL_MAX_TEMP = 2;
+    private static final int COL_MIN_TEMP = 3;
+    private static final int COL_HUMIDITY = 4;
+    private static final int COL_PRESSURE = 5;
+    private static final int COL_WIND_SPEED = 6;
+    private static final int COL_DEGREES = 7;
+    private static final int COL_SHORT_DESC = 8;
+
+    // Forecasts are read one at a time, in the order they were requested
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static ForecastRepository sInstance;
+
+    /**
+     * Notified on the main thread with a forecast read by
+     * {@link #getForecastAsync(String, long, int, OnForecastLoadedListener)}.
+     */
+    public interface OnForecastLoadedListener {
+        void onForecastLoaded(DailyForecast forecast);
+    }
+
+    private final Context mContext;
+    private final LruCache<String, DailyForecast> mCache =
+            new LruCache<>(MAX_CACHED_FORECASTS);
+    // Bumped whenever cached forecasts are dropped, so a read which raced with a write isn't
+    // cached afterwards
+    private long mGeneration;
+
+    private ForecastRepository(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static synchronized ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context);
+        }
+        return sInstance;
+    }
+
+    private static String getKey(String locationSetting, long startDate, int limit) {
+        // Location settings are typed on one line, so they can't contain a newline
+        return locationSetting + '\n' + startDate + '\n' + limit;
+    }
+
+    /**
+     * Reads the forecast of a location from the given date onward, from the cache if it's there.
+     * Only call this from a background thread.
+     *
+     * @param limit The maximum number of days to read, or 0 for all of them
+     * @return the forecast, empty if nothing is stored for those days
+     */
+    public DailyForecast getForecast(String locationSetting, long startDate, int limit) {
+        long date = WeatherContract.normalizeDate(startDate);
+        String key = getKey(locationSetting, date, limit);
+        long generation;
+        synchronized (this) {
+            DailyForecast cached = mCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            generation = mGeneration;
+        }
+        DailyForecast forecast = readForecast(locationSetting, date, limit);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mCache.put(key, forecast);
+            }
+        }
+        return forecast;
+    }
+
+    /**
+     * Reads the forecast in the background, see {@link #getForecast(String, long, int)}.
+     */
+    public void getForecastAsync(final String locationSetting, final long startDate,
+                                 final int limit, final OnForecastLoadedListener listener) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DailyForecast forecast = getForecast(locationSetting, startDate, limit);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onForecastLoaded(forecast);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the forecast of a single day.  Only call this from a background thread.
+     *
+     * @return the forecast, empty if nothing is stored for that day
+     */
+    public DailyForecast getDay(String locationSetting, long date) {
+        DailyForecast forecast = getForecast(locationSetting, date, 1);
+        if (forecast.size() == 0
+                || forecast.getDate(0) != WeatherContract.normalizeDate(date)) {
+            return DailyForecast.EMPTY;
+        }
+        return forecast;
+    }
+
+    private DailyForecast readForecast(String locationSetting, long startDate, int limit) {
+        Cursor cursor = mContext.getContentResolver().query(
+                limit > 0
+                        ? WeatherEntry.buildWeatherLocationWithStartDate(
+                                locationSetting, startDate, limit)
+                        : WeatherEntry.buildWeatherLocationWithStartDate(
+                                locationSetting, startDate),
+                FORECAST_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return DailyForecast.EMPTY;
+        }
+        try {
+            DailyForecast forecast = new DailyForecast(cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                forecast.mDates[i] = cursor.getLong(COL_DATE);
+                forecast.mWeatherIds[i] = cursor.getInt(COL_WEATHER_ID);
+                forecast.mHighs[i] = cursor.getDouble(COL_MAX_TEMP);
+                forecast.mLows[i] = cursor.getDouble(COL_MIN_TEMP);
+                forecast.mHumidities[i] = cursor.getFloat(COL_HUMIDITY);
+                forecast.mPressures[i] = cursor.getFloat(COL_PRESSURE);
+                forecast.mWindSpeeds[i] = cursor.getFloat(COL_WIND_SPEED);
+                forecast.mDegrees[i] = cursor.getFloat(COL_DEGREES);
+                forecast.mDescriptions[i] = cursor.getString(COL_SHORT_DESC);
+            }
+            return forecast;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drops the cached forecasts of the given location, or of every location if it's null.
+     * Called by the provider before it notifies the observers of a change.
+     */
+    static void invalidate(String locationSetting) {
+        ForecastRepository repository;
+        synchronized (ForecastRepository.class) {
+            repository = sInstance;
+        }
+        if (repository == null) {
+            return;
+        }
+        synchronized (repository) {
+            repository.mGeneration++;
+            if (locationSetting == null) {
+                repository.mCache.evictAll();
+                return;
+            }
+            String prefix = locationSetting + '\n';
+            for (String key : repository.mCache.snapshot().keySet()) {
+                if (key.startsWith(prefix)) {
+                    repository.mCache.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only snapshot of the forecast of a location, in a file of fixed-size records which is
+ * memory-mapped to be read.
+ *
+ * The widgets, Muzei and the wearable updater read the forecast many times between syncs, and
+ * each query costs a trip through the provider and a copy of the rows into a cursor window.
+ * Reading the mapped snapshot is a few memory reads per value instead, with no allocation but
+ * for descriptions.
+ *
+ * The snapshot is rewritten whenever the stored forecast changes, see {@link #update}.  It's
+ * written to a temporary file which is then renamed over the old one, so a reader either maps
+ * the old snapshot or the new one, never a partly written one.
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String DIRECTORY = "snapshots";
+    private static final String SUFFIX = ".snap";
+
+    // "SNAP"
+    private static final int MAGIC = 0x534E4150;
+    // Bump whenever the layout changes, so older snapshots are rebuilt rather than misread
+    private static final int VERSION = 1;
+
+    // Header: magic, version, record count, record size, time written
+    private static final int HEADER_SIZE = 32;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_COUNT = 8;
+    private static final int OFFSET_RECORD_SIZE = 12;
+    private static final int OFFSET_WRITTEN_AT = 16;
+
+    // Record: one day of the forecast
+    private static final int RECORD_SIZE = 80;
+    private static final int OFFSET_DATE = 0;
+    private static final int OFFSET_WEATHER_ID = 8;
+    private static final int OFFSET_HIGH = 12;
+    private static final int OFFSET_LOW = 20;
+    private static final int OFFSET_HUMIDITY = 28;
+    private static final int OFFSET_PRESSURE = 32;
+    private static final int OFFSET_WIND_SPEED = 36;
+    private static final int OFFSET_DEGREES = 40;
+    private static final int OFFSET_DESCRIPTION_LENGTH = 44;
+    private static final int OFFSET_DESCRIPTION = 45;
+    // Descriptions are short words such as "Clear", longer ones are cut
+    private static final int MAX_DESCRIPTION_BYTES = 31;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private ForecastSnapshot(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mCount = buffer.getInt(OFFSET_COUNT);
+    }
+
+    private static File getFile(Context context, String locationSetting) {
+        File directory = new File(context.getFilesDir(), DIRECTORY);
+        return new File(directory, Uri.encode(locationSetting) + SUFFIX);
+    }
+
+    /**
+     * Maps the snapshot of the given location, building it from the provider first if there
+     * isn't one yet.
+     *
+     * @return the snapshot, or null if it couldn't be read
+     */
+    public static ForecastSnapshot open(Context context, String locationSetting) {
+        File file = getFile(context, locationSetting);
+        if (!file.exists()) {
+            update(context, locationSetting);
+        }
+        ForecastSnapshot snapshot = map(file);
+        if (snapshot == null) {
+            // Written by an older version of the app, most likely
+            update(context, locationSetting);
+            snapshot = map(file);
+        }
+        return snapshot;
+    }
+
+    private static ForecastSnapshot map(File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            // The mapping stays valid once the file is closed, and even once it's replaced
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_VERSION) != VERSION
+                    || buffer.getInt(OFFSET_RECORD_SIZE) != RECORD_SIZE
+                    || channel.size() < HEADER_SIZE
+                            + (long) buffer.getInt(OFFSET_COUNT) * RECORD_SIZE) {
+                return null;
+            }
+            return new ForecastSnapshot(buffer);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error mapping " + file, e);
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the snapshot of the given location, so the next {@link #open} builds it again.
+     */
+    static synchronized void delete(Context context, String locationSetting) {
+        getFile(context, locationSetting).delete();
+    }
+
+    /**
+     * Rewrites the snapshot of the given location from the forecast stored from today onward.
+     * Call this from a background thread whenever the stored forecast changes.
+     */
+    public static void update(Context context, String locationSetting) {
+        update(context, locationSetting, System.currentTimeMillis());
+    }
+
+    // Writers take turns, as they share the temporary file
+    static synchronized void update(Context context, String locationSetting, long startDate) {
+        DailyForecast forecast = ForecastRepository.getInstance(context)
+                .getForecast(locationSetting, startDate, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + forecast.size() * RECORD_SIZE);
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        buffer.putInt(OFFSET_COUNT, forecast.size());
+        buffer.putInt(OFFSET_RECORD_SIZE, RECORD_SIZE);
+        buffer.putLong(OFFSET_WRITTEN_AT, System.currentTimeMillis());
+        for (int day = 0; day < forecast.size(); day++) {
+            int record = HEADER_SIZE + day * RECORD_SIZE;
+            buffer.putLong(record + OFFSET_DATE, forecast.getDate(day));
+            buffer.putInt(record + OFFSET_WEATHER_ID, forecast.getWeatherId(day));
+            buffer.putDouble(record + OFFSET_HIGH, forecast.getHigh(day));
+            buffer.putDouble(record + OFFSET_LOW, forecast.getLow(day));
+            buffer.putFloat(record + OFFSET_HUMIDITY, forecast.getHumidity(day));
+            buffer.putFloat(record + OFFSET_PRESSURE, forecast.getPressure(day));
+            buffer.putFloat(record + OFFSET_WIND_SPEED, forecast.getWindSpeed(day));
+            buffer.putFloat(record + OFFSET_DEGREES, forecast.getDegrees(day));
+            byte[] description = encodeDescription(forecast.getDescription(day));
+            buffer.put(record + OFFSET_DESCRIPTION_LENGTH, (byte) description.length);
+            for (int i = 0; i < description.length; i++) {
+                buffer.put(record + OFFSET_DESCRIPTION + i, description[i]);
+            }
+        }
+
+        File file = getFile(context, locationSetting);
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Error creating " + directory);
+            return;
+        }
+        File temporary = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            out.write(buffer.array());
+            // Make sure the data is on disk before the rename makes it the snapshot
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                Log.e(LOG_TAG, "Error replacing " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + temporary, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + temporary, e);
+                }
+            }
+            temporary.delete();
+        }
+    }
+
+    private static byte[] encodeDescription(String description) {
+        byte[] bytes;
+        try {
+            bytes = description.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        if (bytes.length <= MAX_DESCRIPTION_BYTES) {
+            return bytes;
+        }
+        // Cut at a character boundary, before a continuation byte
+        int length = MAX_DESCRIPTION_BYTES;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        byte[] cut = new byte[length];
+        System.arraycopy(bytes, 0, cut, 0, length);
+        return cut;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return when the snapshot was written, in milliseconds since the epoch
+     */
+    public long getWrittenAt() {
+        return mBuffer.getLong(OFFSET_WRITTEN_AT);
+    }
+
+    /**
+     * @return the position of the first day at or after the given date, or {@link #getCount()}
+     * if there isn't one.  The snapshot starts from the day it was written, so readers skip the
+     * days which have passed since.
+     */
+    public int getFirstPositionFrom(long date) {
+        long normalizedDate = WeatherContract.normalizeDate(date);
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getDate(mid) < normalizedDate) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int getRecordOffset(int position) {
+        return HEADER_SIZE + position * RECORD_SIZE;
+    }
+
+    public long getDate(int position) {
+        return mBuffer.getLong(getRecordOffset(position) + OFFSET_DATE);
+    }
+
+    public int getWeatherId(int position) {
+        return mBuffer.getInt(getRecordOffset(position) + OFFSET_WEATHER_ID);
+    }
+
+    public double getHigh(int position) {
+        return mBuffer.getDouble(getRecordOffset(position) + OFFSET_HIGH);
+    }
+
+    public double getLow(int position) {
+        return mBuffer.getDouble(getRecordOffset(position) + OFFSET_LOW);
+    }
+
+    public float getHumidity(int position) {
+        return mBuffer.getFloat(getRecordOffset(position) + OFFSET_HUMIDITY);
+    }
+
+    public float getPressure(int position) {
+        return mBuffer.getFloat(getRecordOffset(position) + OFFSET_PRESSURE);
+    }
+
+    public float getWindSpeed(int position) {
+        return mBuffer.getFloat(getRecordOffset(position) + OFFSET_WIND_SPEED);
+    }
+
+    public float getDegrees(int position) {
+        return mBuffer.getFloat(getRecordOffset(position) + OFFSET_DEGREES);
+    }
+
+    public String getDescription(int position) {
+        int offset = getRecordOffset(position);
+        int length = mBuffer.get(offset + OFFSET_DESCRIPTION_LENGTH);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + OFFSET_DESCRIPTION + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
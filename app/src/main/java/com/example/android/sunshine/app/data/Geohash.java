@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohashes, which name the cells of a grid over the globe so that nearby points share a prefix.
+ *
+ * Each character halves the cell alternately along longitude and latitude, five times over.  A
+ * column of geohashes with an index can then find the points in a cell with a range query on its
+ * prefix, and the points near a position by querying the cell it falls in and the eight cells
+ * around it.
+ */
+class Geohash {
+    static final int MAX_PRECISION = 9;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    // Mean radius of the Earth
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private Geohash() {
+    }
+
+    /**
+     * @return the geohash of the cell the given position falls in, with the given number of
+     * characters
+     */
+    static String encode(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean isLonBit = true;
+        int bits = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (isLonBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            isLonBit = !isLonBit;
+            if (++bits == 5) {
+                hash.append(BASE32.charAt(ch));
+                bits = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    static double getCellHeightDegrees(int precision) {
+        return 180 / Math.pow(2, (5 * precision) / 2);
+    }
+
+    static double getCellWidthDegrees(int precision) {
+        return 360 / Math.pow(2, (5 * precision + 1) / 2);
+    }
+
+    /**
+     * @return the distance from the given position which is sure to be covered by the cell it
+     * falls in and the eight cells around it, at the given precision
+     */
+    static double getCoveredRadiusKm(double lat, int precision) {
+        if (precision == 0) {
+            return Double.MAX_VALUE;
+        }
+        double height = getCellHeightDegrees(precision);
+        // Cells narrow towards the poles, so take their width on the side nearer the pole
+        double poleward = Math.min(90, Math.abs(lat) + height);
+        double widthKm = getCellWidthDegrees(precision) * KM_PER_DEGREE
+                * Math.cos(Math.toRadians(poleward));
+        return Math.min(height * KM_PER_DEGREE, widthKm);
+    }
+
+    /**
+     * @return the longest geohash whose cells, along with their neighbours, cover the given
+     * distance from any position at the given latitude, or 0 if even the coarsest cells don't
+     */
+    static int getPrecisionForRadius(double lat, double radiusKm) {
+        for (int precision = MAX_PRECISION; precision > 0; precision--) {
+            if (getCoveredRadiusKm(lat, precision) >= radiusKm) {
+                return precision;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the geohashes of the cell the given position falls in and of the cells around it,
+     * without duplicates.  There are fewer than nine near the poles, where cells meet.
+     */
+    static List<String> getCellAndNeighbours(double lat, double lon, int precision) {
+        double height = getCellHeightDegrees(precision);
+        double width = getCellWidthDegrees(precision);
+        ArrayList<String> cells = new ArrayList<>(9);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            double cellLat = lat + dLat * height;
+            if (cellLat < -90 || cellLat > 90) {
+                continue;
+            }
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                String cell = encode(cellLat, wrapLongitude(lon + dLon * width), precision);
+                if (!cells.contains(cell)) {
+                    cells.add(cell);
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static double wrapLongitude(double lon) {
+        if (lon >= 180) {
+            return lon - 360;
+        } else if (lon < -180) {
+            return lon + 360;
+        }
+        return lon;
+    }
+
+    /**
+     * @return the smallest string greater than every geohash starting with the given prefix
+     */
+    static String getPrefixEnd(String prefix) {
+        // '~' sorts after every character of the alphabet
+        return prefix + '~';
+    }
+
+    /**
+     * @return the great circle distance between two positions
+     */
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+
+import java.util.Arrays;
+
+/**
+ * A row per hour, over the rows of the hourly table which hold a day of hours each.
+ *
+ * Only the hours of each day and their count are read up front.  The series of a day are
+ * decoded when the cursor first moves onto one of its hours, so reading a few hours of a long
+ * range costs no more than the days they fall in.
+ */
+class HourlyCursor extends AbstractCursor {
+
+    // Columns of the day rows this reads, in this order
+    static final String[] DAY_COLUMNS = {
+            HourlyEntry.COLUMN_DATE,
+            HourlyEntry.COLUMN_FIRST_HOUR,
+            HourlyEntry.COLUMN_HOUR_COUNT,
+            HourlyEntry.COLUMN_TEMPS,
+            HourlyEntry.COLUMN_PRECIPITATIONS,
+            HourlyEntry.COLUMN_WIND_SPEEDS
+    };
+    private static final int COL_DATE = 0;
+    private static final int COL_FIRST_HOUR = 1;
+    private static final int COL_HOUR_COUNT = 2;
+    private static final int COL_TEMPS = 3;
+    private static final int COL_PRECIPITATIONS = 4;
+    private static final int COL_WIND_SPEEDS = 5;
+
+    static final String[] DEFAULT_PROJECTION = {
+            HourlyEntry.COLUMN_TIME,
+            HourlyEntry.COLUMN_TEMP,
+            HourlyEntry.COLUMN_PRECIPITATION,
+            HourlyEntry.COLUMN_WIND_SPEED
+    };
+
+    private static final int TIME = 0;
+    private static final int TEMP = 1;
+    private static final int PRECIPITATION = 2;
+    private static final int WIND_SPEED = 3;
+
+    private final Cursor mDays;
+    private final String[] mColumnNames;
+    // Which of TIME, TEMP, PRECIPITATION and WIND_SPEED each column is
+    private final int[] mColumns;
+
+    // For each day, the position of its first hour in this cursor, and the index of that hour in
+    // the series of the day.  There's one more position at the end, for the count.
+    private final int[] mDayStarts;
+    private final int[] mFirstIndices;
+
+    private int mDecodedDay = -1;
+    private long mDecodedDate;
+    private int mDecodedFirstHour;
+    private double[] mTemps;
+    private double[] mPrecipitations;
+    private double[] mWindSpeeds;
+
+    /**
+     * @param days The day rows, ordered by date, with {@link #DAY_COLUMNS}
+     * @param startTime The first hour to include, or 0 to include every hour from the first day
+     * @param endTime The hour at which to stop, exclusive, or 0 for every hour to the last day
+     */
+    HourlyCursor(Cursor days, String[] projection, long startTime, long endTime) {
+        mDays = days;
+        mColumnNames = projection != null ? projection : DEFAULT_PROJECTION;
+        mColumns = new int[mColumnNames.length];
+        for (int i = 0; i < mColumnNames.length; i++) {
+            mColumns[i] = Arrays.asList(DEFAULT_PROJECTION).indexOf(mColumnNames[i]);
+            if (mColumns[i] < 0) {
+                throw new IllegalArgumentException("Unknown hourly column " + mColumnNames[i]);
+            }
+        }
+
+        int dayCount = days.getCount();
+        mDayStarts = new int[dayCount + 1];
+        mFirstIndices = new int[dayCount];
+        int position = 0;
+        for (int day = 0; day < dayCount; day++) {
+            days.moveToPosition(day);
+            long date = days.getLong(COL_DATE);
+            int firstHour = days.getInt(COL_FIRST_HOUR);
+            int hourCount = days.getInt(COL_HOUR_COUNT);
+            int first = 0;
+            while (first < hourCount && startTime != 0
+                    && getHourTime(date, firstHour, first) < startTime) {
+                first++;
+            }
+            int last = hourCount;
+            while (last > first && endTime != 0
+                    && getHourTime(date, firstHour, last - 1) >= endTime) {
+                last--;
+            }
+            mDayStarts[day] = position;
+            mFirstIndices[day] = first;
+            position += last - first;
+        }
+        mDayStarts[dayCount] = position;
+    }
+
+    private static long getHourTime(long date, int firstHour, int index) {
+        return date + (firstHour + index) * DateUtils.HOUR_IN_MILLIS;
+    }
+
+    @Override
+    public int getCount() {
+        return mDayStarts[mDayStarts.length - 1];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        // The last day starting at or before the position, skipping days without hours
+        int day = Arrays.binarySearch(mDayStarts, 0, mDayStarts.length - 1, newPosition);
+        if (day < 0) {
+            day = -day - 2;
+        }
+        while (day + 1 < mDayStarts.length - 1 && mDayStarts[day + 1] <= newPosition) {
+            day++;
+        }
+        if (day != mDecodedDay) {
+            decodeDay(day);
+        }
+        return true;
+    }
+
+    private void decodeDay(int day) {
+        mDays.moveToPosition(day);
+        int hourCount = mDays.getInt(COL_HOUR_COUNT);
+        mDecodedDate = mDays.getLong(COL_DATE);
+        mDecodedFirstHour = mDays.getInt(COL_FIRST_HOUR);
+        mTemps = HourlySeries.decode(mDays.getBlob(COL_TEMPS), hourCount,
+                HourlyEntry.TEMP_RESOLUTION);
+        mPrecipitations = HourlySeries.decode(mDays.getBlob(COL_PRECIPITATIONS), hourCount,
+                HourlyEntry.PRECIPITATION_RESOLUTION);
+        mWindSpeeds = HourlySeries.decode(mDays.getBlob(COL_WIND_SPEEDS), hourCount,
+                HourlyEntry.WIND_SPEED_RESOLUTION);
+        mDecodedDay = day;
+    }
+
+    private double getValue(int column) {
+        int index = mFirstIndices[mDecodedDay] + getPosition() - mDayStarts[mDecodedDay];
+        switch (mColumns[column]) {
+            case TIME:
+                return getHourTime(mDecodedDate, mDecodedFirstHour, index);
+            case TEMP:
+                return mTemps[index];
+            case PRECIPITATION:
+                return mPrecipitations[index];
+            default:
+                return mWindSpeeds[index];
+        }
+    }
+
+    @Override
+    public String getString(int column) {
+        if (mColumns[column] == TIME) {
+            return Long.toString(getLong(column));
+        }
+        return Double.toString(getValue(column));
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getValue(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getValue(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (mColumns[column] == TIME) {
+            int index = mFirstIndices[mDecodedDay] + getPosition() - mDayStarts[mDecodedDay];
+            return getHourTime(mDecodedDate, mDecodedFirstHour, index);
+        }
+        return (long) getValue(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getValue(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getValue(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        mDays.close();
+    }
+
+    @Override
+    public void deactivate() {
+        super.deactivate();
+        mDays.deactivate();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes an hourly series of values into the compact blob it is stored as.
+ *
+ * Values are rounded to a fixed resolution, and each is stored as its difference from the one
+ * before it, zigzag encoded into a variable number of bytes.  Hourly weather changes slowly, so
+ * most differences fit in a single byte, and a day of values takes about 24 bytes instead of
+ * 24 rows.
+ */
+class HourlySeries {
+
+    private HourlySeries() {
+    }
+
+    static byte[] encode(double[] values, double resolution) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(values.length + 4);
+        long previous = 0;
+        for (double value : values) {
+            long quantized = Math.round(value / resolution);
+            long delta = quantized - previous;
+            previous = quantized;
+            // Zigzag, so that small negative differences are small numbers too
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.write((int) zigzag);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the first count values of the series, or of as many as the blob has
+     */
+    static double[] decode(byte[] blob, int count, double resolution) {
+        double[] values = new double[count];
+        long previous = 0;
+        int offset = 0;
+        for (int i = 0; i < count && offset < blob.length; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = blob[offset++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0 && offset < blob.length);
+            long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+            previous += delta;
+            values[i] = previous * resolution;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the saved locations near a position, through the geohash column of the location table.
+ *
+ * Only the locations in the geohash cell of the position and the cells around it are read, with
+ * range queries on the index, and their exact distances are then computed here.  The nearest
+ * location is found by widening the cells until some location is sure to be the nearest, so
+ * neither query reads the whole table unless the locations are all far apart.
+ */
+class LocationIndex {
+
+    private static final String[] DEFAULT_PROJECTION = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_DISTANCE
+    };
+
+    private static final Comparator<NearbyLocation> BY_DISTANCE =
+            new Comparator<NearbyLocation>() {
+                @Override
+                public int compare(NearbyLocation lhs, NearbyLocation rhs) {
+                    return Double.compare(lhs.distance, rhs.distance);
+                }
+            };
+
+    private LocationIndex() {
+    }
+
+    /**
+     * Sets the geohash of location values which have both coordinates.
+     */
+    static void putGeohash(ContentValues values) {
+        Double lat = values.getAsDouble(LocationEntry.COLUMN_COORD_LAT);
+        Double lon = values.getAsDouble(LocationEntry.COLUMN_COORD_LONG);
+        if (lat != null && lon != null) {
+            values.put(LocationEntry.COLUMN_GEOHASH,
+                    Geohash.encode(lat, lon, Geohash.MAX_PRECISION));
+        }
+    }
+
+    /**
+     * @param radiusKm The greatest distance of the locations, or 0 for any distance
+     * @param limit The greatest number of locations, or 0 for all of them
+     * @return the locations near the given position, nearest first, with the requested columns
+     * and their distance
+     */
+    static Cursor queryNearby(SQLiteDatabase db, String[] projection,
+                              double lat, double lon, double radiusKm, int limit) {
+        if (projection == null) {
+            projection = DEFAULT_PROJECTION;
+        }
+        // Read the requested columns, other than the distance, and the coordinates last
+        ArrayList<String> columns = new ArrayList<>();
+        for (String column : projection) {
+            if (!LocationEntry.COLUMN_DISTANCE.equals(column)) {
+                columns.add(column);
+            }
+        }
+        columns.add(LocationEntry.COLUMN_COORD_LAT);
+        columns.add(LocationEntry.COLUMN_COORD_LONG);
+        String[] columnArray = columns.toArray(new String[columns.size()]);
+
+        List<NearbyLocation> found;
+        if (radiusKm > 0) {
+            found = findWithin(db, columnArray, projection, lat, lon,
+                    Geohash.getPrecisionForRadius(lat, radiusKm), radiusKm);
+        } else if (limit > 0) {
+            int precision = Geohash.MAX_PRECISION;
+            while (true) {
+                // Whatever lies within the distance the cells cover is nearer than anything
+                // outside them
+                found = findWithin(db, columnArray, projection, lat, lon, precision,
+                        Geohash.getCoveredRadiusKm(lat, precision));
+                if (found.size() >= limit || precision == 0) {
+                    break;
+                }
+                precision--;
+            }
+        } else {
+            found = findWithin(db, columnArray, projection, lat, lon, 0, Double.MAX_VALUE);
+        }
+
+        Collections.sort(found, BY_DISTANCE);
+        int count = limit > 0 ? Math.min(limit, found.size()) : found.size();
+        MatrixCursor cursor = new MatrixCursor(projection, count);
+        for (int i = 0; i < count; i++) {
+            cursor.addRow(found.get(i).row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Reads the locations in the cells around the given position, or every location if the
+     * precision is 0, and keeps those within the given distance.
+     */
+    private static List<NearbyLocation> findWithin(SQLiteDatabase db, String[] columns,
+                                                   String[] projection, double lat, double lon,
+                                                   int precision, double radiusKm) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (precision > 0) {
+            List<String> cells = Geohash.getCellAndNeighbours(lat, lon, precision);
+            StringBuilder builder = new StringBuilder();
+            selectionArgs = new String[cells.size() * 2];
+            for (int i = 0; i < cells.size(); i++) {
+                if (i > 0) {
+                    builder.append(" OR ");
+                }
+                builder.append('(').append(LocationEntry.COLUMN_GEOHASH).append(" >= ? AND ")
+                        .append(LocationEntry.COLUMN_GEOHASH).append(" < ?)");
+                selectionArgs[i * 2] = cells.get(i);
+                selectionArgs[i * 2 + 1] = Geohash.getPrefixEnd(cells.get(i));
+            }
+            selection = builder.toString();
+        }
+
+        ArrayList<NearbyLocation> found = new ArrayList<>();
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, columns, selection, selectionArgs,
+                null, null, null);
+        try {
+            int latIndex = columns.length - 2;
+            int longIndex = columns.length - 1;
+            while (cursor.moveToNext()) {
+                double distance = Geohash.distanceKm(lat, lon,
+                        cursor.getDouble(latIndex), cursor.getDouble(longIndex));
+                if (distance > radiusKm) {
+                    continue;
+                }
+                // Values are kept as strings, which MatrixCursor converts back as requested
+                Object[] row = new Object[projection.length];
+                int column = 0;
+                for (int i = 0; i < projection.length; i++) {
+                    if (LocationEntry.COLUMN_DISTANCE.equals(projection[i])) {
+                        row[i] = distance;
+                    } else {
+                        row[i] = cursor.getString(column++);
+                    }
+                }
+                found.add(new NearbyLocation(row, distance));
+            }
+        } finally {
+            cursor.close();
+        }
+        return found;
+    }
+
+    private static class NearbyLocation {
+        final Object[] row;
+        final double distance;
+
+        NearbyLocation(Object[] row, double distance) {
+            this.row = row;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/**
+ * Moves the weather of past days into the archive, and keeps the archive bounded.
+ *
+ * Days are kept one row each for {@link #DAILY_RETENTION_DAYS}, then rolled up into a row per
+ * week, and weeks are dropped after {@link #WEEKLY_RETENTION_WEEKS}.  That bounds the history
+ * of a location to a few hundred rows, however long the app is used.
+ */
+class WeatherArchiver {
+    static final int DAILY_RETENTION_DAYS = 60;
+    static final int WEEKLY_RETENTION_WEEKS = 104;
+
+    // Rows are moved out of the weather table this many at a time, so no single statement has
+    // to hold all of them after a long time without compaction
+    private static final int BATCH_SIZE = 200;
+
+    private static final long WEEK_IN_MILLIS = 7 * DateUtils.DAY_IN_MILLIS;
+    // Dates are normalized to the start of the day in the local time zone, so they can be off a
+    // whole number of days by an hour either way around daylight saving time changes
+    private static final long WEEK_BUCKET_OFFSET = DateUtils.HOUR_IN_MILLIS * 12;
+
+    private static final String WEEK_BUCKET = weekBucket(ArchiveEntry.COLUMN_PERIOD_START);
+
+    private static final String SQL_ARCHIVE_DAYS = "INSERT INTO " + ArchiveEntry.TABLE_NAME + " ("
+            + ArchiveEntry.COLUMN_LOC_KEY + ", "
+            + ArchiveEntry.COLUMN_PERIOD_START + ", "
+            + ArchiveEntry.COLUMN_PERIOD_DAYS + ", "
+            + ArchiveEntry.COLUMN_DAY_COUNT + ", "
+            + ArchiveEntry.COLUMN_WEATHER_ID + ", "
+            + ArchiveEntry.COLUMN_MIN_TEMP + ", "
+            + ArchiveEntry.COLUMN_MAX_TEMP + ", "
+            + ArchiveEntry.COLUMN_HUMIDITY + ", "
+            + ArchiveEntry.COLUMN_PRESSURE + ", "
+            + ArchiveEntry.COLUMN_WIND_SPEED + ") SELECT "
+            + WeatherEntry.COLUMN_LOC_KEY + ", "
+            + WeatherEntry.COLUMN_DATE + ", "
+            + ArchiveEntry.PERIOD_DAY + ", 1, "
+            + WeatherEntry.COLUMN_WEATHER_ID + ", "
+            + WeatherEntry.COLUMN_MIN_TEMP + ", "
+            + WeatherEntry.COLUMN_MAX_TEMP + ", "
+            + WeatherEntry.COLUMN_HUMIDITY + ", "
+            + WeatherEntry.COLUMN_PRESSURE + ", "
+            + WeatherEntry.COLUMN_WIND_SPEED
+            + " FROM " + WeatherEntry.TABLE_NAME
+            + " WHERE " + WeatherEntry._ID + " IN (" + selectExpiredBatch() + ")";
+
+    private static final String WEEK_START =
+            "(" + WEEK_BUCKET + " * " + WEEK_IN_MILLIS + " - " + WEEK_BUCKET_OFFSET + ")";
+
+    // Ranks the conditions of a week, so its row shows the worst weather of the week rather than
+    // whichever id is the lowest.  Extreme weather comes first, then storms, snow, rain, drizzle,
+    // fog and the like, clouds, wind, and clear sky last
+    private static final String SEVERITY = "(CASE"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 900 AND 906"
+            + " OR " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 957 AND 962 THEN 9"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 200 AND 299 THEN 8"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 600 AND 699 THEN 7"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 500 AND 599 THEN 6"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 300 AND 399 THEN 5"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 700 AND 799 THEN 4"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 801 AND 804 THEN 3"
+            + " WHEN " + ArchiveEntry.COLUMN_WEATHER_ID + " BETWEEN 951 AND 956 THEN 2"
+            + " ELSE 1 END)";
+
+    // Weather ids are all below 1000, so the most severe id is found with a plain MAX over the
+    // severity scaled above them, and recovered with the remainder
+    private static final String WORST_WEATHER_ID = "(MAX(" + SEVERITY + " * 1000 + "
+            + ArchiveEntry.COLUMN_WEATHER_ID + ") % 1000)";
+
+    // The week is formatted in rather than bound, as the bucket expression has no column affinity
+    // and SQLite would compare it to a bound string as text.  Weeks already rolled up are grouped
+    // along with the days, and their row is keyed on the start of the week, so a late day is
+    // merged into it rather than replacing it
+    private static final String SQL_ROLL_UP_WEEKS = "INSERT INTO " + ArchiveEntry.TABLE_NAME + " ("
+            + ArchiveEntry.COLUMN_LOC_KEY + ", "
+            + ArchiveEntry.COLUMN_PERIOD_START + ", "
+            + ArchiveEntry.COLUMN_PERIOD_DAYS + ", "
+            + ArchiveEntry.COLUMN_DAY_COUNT + ", "
+            + ArchiveEntry.COLUMN_WEATHER_ID + ", "
+            + ArchiveEntry.COLUMN_MIN_TEMP + ", "
+            + ArchiveEntry.COLUMN_MAX_TEMP + ", "
+            + ArchiveEntry.COLUMN_HUMIDITY + ", "
+            + ArchiveEntry.COLUMN_PRESSURE + ", "
+            + ArchiveEntry.COLUMN_WIND_SPEED + ") SELECT "
+            + ArchiveEntry.COLUMN_LOC_KEY + ", "
+            + WEEK_START + ", "
+            + ArchiveEntry.PERIOD_WEEK + ", "
+            + "SUM(" + ArchiveEntry.COLUMN_DAY_COUNT + "), "
+            + WORST_WEATHER_ID + ", "
+            + "MIN(" + ArchiveEntry.COLUMN_MIN_TEMP + "), "
+            + "MAX(" + ArchiveEntry.COLUMN_MAX_TEMP + "), "
+            + dayWeightedAverage(ArchiveEntry.COLUMN_HUMIDITY) + ", "
+            + dayWeightedAverage(ArchiveEntry.COLUMN_PRESSURE) + ", "
+            + dayWeightedAverage(ArchiveEntry.COLUMN_WIND_SPEED)
+            + " FROM " + ArchiveEntry.TABLE_NAME
+            + " WHERE " + WEEK_BUCKET + " < %d"
+            + " GROUP BY " + ArchiveEntry.COLUMN_LOC_KEY + ", " + WEEK_BUCKET;
+
+    private WeatherArchiver() {
+    }
+
+    /**
+     * @return an SQL expression which is the same for all the dates of a week, and increases
+     * from one week to the next
+     */
+    static String weekBucket(String dateColumn) {
+        return "((" + dateColumn + " + " + WEEK_BUCKET_OFFSET + ") / " + WEEK_IN_MILLIS + ")";
+    }
+
+    /**
+     * @return an SQL aggregate averaging the column over the days of the rows, so a week already
+     * rolled up counts for as many days as it holds
+     */
+    private static String dayWeightedAverage(String column) {
+        return "(SUM(" + column + " * " + ArchiveEntry.COLUMN_DAY_COUNT + ") / SUM("
+                + ArchiveEntry.COLUMN_DAY_COUNT + "))";
+    }
+
+    private static String selectExpiredBatch() {
+        return "SELECT " + WeatherEntry._ID + " FROM " + WeatherEntry.TABLE_NAME
+                + " WHERE " + WeatherEntry.COLUMN_DATE + " < ?"
+                + " ORDER BY " + WeatherEntry._ID + " LIMIT " + BATCH_SIZE;
+    }
+
+    /**
+     * Moves the weather before the given date into the archive, drops the hours of those days,
+     * rolls up the days which are past the daily retention into weeks, and drops the weeks past
+     * the weekly retention.  It all happens in one transaction, so the history is never seen
+     * half compacted.
+     *
+     * @return the number of days moved out of the weather table
+     */
+    static int compact(SQLiteDatabase db, long cutoffDate) {
+        String[] cutoffArgs = new String[]{Long.toString(cutoffDate)};
+        int archived = 0;
+        db.beginTransaction();
+        try {
+            int moved;
+            do {
+                // Both statements pick the same batch, the oldest rows by id
+                db.execSQL(SQL_ARCHIVE_DAYS, cutoffArgs);
+                moved = db.delete(WeatherEntry.TABLE_NAME,
+                        WeatherEntry._ID + " IN (" + selectExpiredBatch() + ")", cutoffArgs);
+                archived += moved;
+            } while (moved == BATCH_SIZE);
+
+            // The hours of past days aren't archived
+            db.delete(HourlyEntry.TABLE_NAME, HourlyEntry.COLUMN_DATE + " < ?", cutoffArgs);
+
+            // Only whole weeks are rolled up, so a week is never split over two rows
+            long dailyCutoff = cutoffDate - DAILY_RETENTION_DAYS * DateUtils.DAY_IN_MILLIS;
+            long weekCutoff = (dailyCutoff + WEEK_BUCKET_OFFSET) / WEEK_IN_MILLIS;
+            db.execSQL(String.format(Locale.US, SQL_ROLL_UP_WEEKS, weekCutoff));
+            // The days are now in their week, as are weeks rolled up before they were keyed on
+            // the start of the week
+            db.delete(ArchiveEntry.TABLE_NAME,
+                    WEEK_BUCKET + " < " + weekCutoff + " AND ("
+                            + ArchiveEntry.COLUMN_PERIOD_DAYS + " = " + ArchiveEntry.PERIOD_DAY
+                            + " OR " + ArchiveEntry.COLUMN_PERIOD_START + " != " + WEEK_START + ")",
+                    null);
+
+            long weeklyCutoff = cutoffDate - WEEKLY_RETENTION_WEEKS * WEEK_IN_MILLIS;
+            db.delete(ArchiveEntry.TABLE_NAME,
+                    ArchiveEntry.COLUMN_PERIOD_START + " < ?",
+                    new String[]{Long.toString(weeklyCutoff)});
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return archived;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * The rows written by provider operations, gathered so that observers are notified once the
+ * operations are done, and only those of the locations and days which changed.
+ *
+ * Cursors register for their query uri and its descendants, and a notification reaches the
+ * observers of the notified uri, of its ancestors and of its descendants.  Notifying
+ * weather/London/20150101 rather than weather therefore leaves the forecast of every other
+ * location, and the detail view of every other day, alone.
+ */
+class WeatherChanges {
+    // What was written for each location id, the changes get their location when published
+    private final HashMap<Long, ForecastChange> mWeather = new HashMap<>();
+    private final HashSet<Long> mHourlyLocations = new HashSet<>();
+    // Uris notified as they are, such as a whole table when the rows written aren't known
+    private final LinkedHashSet<Uri> mUris = new LinkedHashSet<>();
+
+    boolean isEmpty() {
+        return mWeather.isEmpty() && mHourlyLocations.isEmpty() && mUris.isEmpty();
+    }
+
+    void addUri(Uri uri) {
+        mUris.add(uri);
+    }
+
+    private ForecastChange getWeatherChange(long locationId) {
+        ForecastChange change = mWeather.get(locationId);
+        if (change == null) {
+            change = new ForecastChange(null);
+            mWeather.put(locationId, change);
+        }
+        return change;
+    }
+
+    /**
+     * Adds the weather row inserted with the given values, whose date has been normalized.
+     */
+    void addWeather(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        if (locationId == null) {
+            mUris.add(WeatherEntry.CONTENT_URI);
+            return;
+        }
+        getWeatherChange(locationId).addRows(values.getAsLong(WeatherEntry.COLUMN_DATE));
+    }
+
+    /**
+     * Adds the weather rows the given selection matches.  Call this before they are updated or
+     * deleted.
+     *
+     * @param updatedValues The values the rows are updated with, or null if they are deleted
+     */
+    void addWeatherRows(SQLiteDatabase db, String selection, String[] selectionArgs,
+                        ContentValues updatedValues) {
+        if (isEverything(selection)) {
+            mUris.add(WeatherEntry.CONTENT_URI);
+            return;
+        }
+        Cursor cursor = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ForecastChange change = getWeatherChange(cursor.getLong(0));
+                if (updatedValues == null) {
+                    change.addRows(cursor.getLong(1));
+                } else {
+                    change.addUpdate(cursor.getLong(1), updatedValues.keySet());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    void addHourly(ContentValues values) {
+        Long locationId = values.getAsLong(HourlyEntry.COLUMN_LOC_KEY);
+        if (locationId == null) {
+            mUris.add(HourlyEntry.CONTENT_URI);
+        } else {
+            mHourlyLocations.add(locationId);
+        }
+    }
+
+    /**
+     * Adds the locations of the hourly rows the given selection matches.  Call this before they
+     * are deleted.
+     */
+    void addHourlyRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        if (isEverything(selection)) {
+            mUris.add(HourlyEntry.CONTENT_URI);
+            return;
+        }
+        Cursor cursor = db.query(true, HourlyEntry.TABLE_NAME,
+                new String[]{HourlyEntry.COLUMN_LOC_KEY},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                mHourlyLocations.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean isEverything(String selection) {
+        return selection == null || "1".equals(selection);
+    }
+
+    /**
+     * Notifies the observers of everything added, publishes it to the change feed, and forgets
+     * it.
+     */
+    void notifyObservers(ContentResolver resolver, SQLiteDatabase db) {
+        boolean allWeather = mUris.contains(WeatherEntry.CONTENT_URI);
+        boolean allHourly = mUris.contains(HourlyEntry.CONTENT_URI);
+        HashSet<Long> locationIds = new HashSet<>();
+        if (!allWeather) {
+            locationIds.addAll(mWeather.keySet());
+        }
+        if (!allHourly) {
+            locationIds.addAll(mHourlyLocations);
+        }
+        HashMap<Long, String> settings = queryLocationSettings(db, locationIds);
+
+        // Whatever reloads on the notifications has to miss the cache
+        if (allWeather) {
+            ForecastRepository.invalidate(null);
+        } else {
+            for (Long locationId : mWeather.keySet()) {
+                ForecastRepository.invalidate(settings.get(locationId));
+            }
+        }
+
+        for (Uri uri : mUris) {
+            resolver.notifyChange(uri, null);
+        }
+        if (!allWeather) {
+            for (Map.Entry<Long, ForecastChange> entry : mWeather.entrySet()) {
+                String setting = settings.get(entry.getKey());
+                long[] dates = entry.getValue().getDates();
+                if (setting == null) {
+                    // The location is gone, so its rows can't be told apart from the others
+                    resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+                    ForecastChangeFeed.publish(ForecastChange.everything());
+                } else {
+                    if (dates != null && dates.length == 1) {
+                        resolver.notifyChange(WeatherEntry.buildWeatherLocationWithDate(
+                                setting, dates[0]), null);
+                    } else {
+                        resolver.notifyChange(WeatherEntry.buildWeatherLocation(setting), null);
+                    }
+                    ForecastChangeFeed.publish(entry.getValue().withLocation(setting));
+                }
+            }
+        } else {
+            ForecastChangeFeed.publish(ForecastChange.everything());
+        }
+        if (!allHourly) {
+            for (Long locationId : mHourlyLocations) {
+                String setting = settings.get(locationId);
+                resolver.notifyChange(setting == null ? HourlyEntry.CONTENT_URI
+                        : HourlyEntry.buildHourlyLocationWithRange(setting, 0, 0), null);
+            }
+        }
+
+        mWeather.clear();
+        mHourlyLocations.clear();
+        mUris.clear();
+    }
+
+    private static HashMap<Long, String> queryLocationSettings(SQLiteDatabase db,
+                                                               HashSet<Long> locationIds) {
+        HashMap<Long, String> settings = new HashMap<>();
+        if (locationIds.isEmpty()) {
+            return settings;
+        }
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_LOCATION_SETTING},
+                LocationEntry._ID + " IN (" + TextUtils.join(",", locationIds) + ")",
+                null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                settings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return settings;
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentResolver;
 import android.content.ContentUris;
+import android.content.ContentValues;
 import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.format.Time;
@@ -43,6 +44,9 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_ARCHIVE = "archive";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_HOURLY = "hourly";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -81,9 +85,75 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Geohash of the coordinates, computed by the provider, so that the locations near a
+        // position can be found with an index instead of a scan of the table
+        public static final String COLUMN_GEOHASH = "geohash";
+
+        // Distance in km from the queried position, only in the rows of the nearby uris
+        public static final String COLUMN_DISTANCE = "distance";
+
+        // Path segment and query parameters of the uris which find locations by position
+        static final String PATH_NEARBY = "nearby";
+        static final String QUERY_PARAM_LAT = "lat";
+        static final String QUERY_PARAM_LONG = "lon";
+        static final String QUERY_PARAM_RADIUS = "radius";
+        static final String QUERY_PARAM_LIMIT = "limit";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /**
+         * Builds the uri of the saved location nearest to the given position, however far it is.
+         */
+        public static Uri buildNearestLocationUri(double lat, double lon) {
+            return buildNearbyLocationsUri(lat, lon, 0, 1);
+        }
+
+        /**
+         * Builds the uri of the saved locations within the given distance of a position, nearest
+         * first.
+         *
+         * @param radiusKm The greatest distance in km, or 0 for any distance
+         * @param limit The greatest number of locations, or 0 for all of them
+         */
+        public static Uri buildNearbyLocationsUri(double lat, double lon, double radiusKm,
+                                                  int limit) {
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(PATH_NEARBY)
+                    .appendQueryParameter(QUERY_PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(QUERY_PARAM_LONG, Double.toString(lon));
+            if (radiusKm > 0) {
+                builder.appendQueryParameter(QUERY_PARAM_RADIUS, Double.toString(radiusKm));
+            }
+            if (limit > 0) {
+                builder.appendQueryParameter(QUERY_PARAM_LIMIT, Integer.toString(limit));
+            }
+            return builder.build();
+        }
+
+        public static double getLatFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(QUERY_PARAM_LAT));
+        }
+
+        public static double getLongFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(QUERY_PARAM_LONG));
+        }
+
+        public static double getRadiusFromUri(Uri uri) {
+            String radiusString = uri.getQueryParameter(QUERY_PARAM_RADIUS);
+            if (null != radiusString && radiusString.length() > 0)
+                return Double.parseDouble(radiusString);
+            else
+                return 0;
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(QUERY_PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -126,6 +196,9 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameter limiting the number of rows returned
+        public static final String QUERY_PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -144,6 +217,17 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /**
+         * Builds a uri for at most {@code limit} days of weather, starting at the given date.
+         * Paging through the forecast by start date keeps each query small however far the
+         * forecast goes.
+         */
+        public static Uri buildWeatherLocationWithStartDate(
+                String locationSetting, long startDate, int limit) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -157,6 +241,17 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        /**
+         * @return the maximum number of rows requested by the uri, or null if there's no limit
+         */
+        public static String getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(QUERY_PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.toString(Integer.parseInt(limitString));
+            else
+                return null;
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -165,4 +260,295 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the table contents of the archive table, which keeps the weather
+        of past days once they drop out of the forecast.  Recent days are kept one row per day,
+        older ones are rolled up into one row per week, and the oldest are dropped, so the history
+        kept per location is bounded.
+     */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ARCHIVE;
+
+        public static final String TABLE_NAME = "weather_archive";
+
+        // Path segment of the uri which rolls expired weather into the archive
+        static final String PATH_COMPACT = "compact";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Start of the period the row covers, stored as long in milliseconds since the epoch
+        public static final String COLUMN_PERIOD_START = "period_start";
+        // Length of the period the row covers in days: 1 for daily rows, 7 for weekly rows
+        public static final String COLUMN_PERIOD_DAYS = "period_days";
+        // Number of days of weather actually rolled into the row, which is less than the period
+        // when days are missing
+        public static final String COLUMN_DAY_COUNT = "day_count";
+        // Weather id of the most severe weather of the period, as the lower ids are
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        // Lowest and highest temperatures of the period
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+
+        // Averages over the days of the period
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+
+        public static final int PERIOD_DAY = 1;
+        public static final int PERIOD_WEEK = 7;
+
+        public static Uri buildArchiveLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildArchiveLocationWithStartDate(
+                String locationSetting, long startDate) {
+            long normalizedDate = normalizeDate(startDate);
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(COLUMN_PERIOD_START, Long.toString(normalizedDate))
+                    .build();
+        }
+
+        /**
+         * Builds the uri which, when updated, moves all the weather before the given date into
+         * the archive and compacts the archive.
+         */
+        public static Uri buildCompactUri(long cutoffDate) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_COMPACT)
+                    .appendPath(Long.toString(normalizeDate(cutoffDate))).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getCutoffDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(2));
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(COLUMN_PERIOD_START);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the summaries of the weather of a location which the provider
+        computes, so that callers get a few rows instead of every day.  Each summary covers the
+        days of the forecast from an optional start date up to an optional end date.
+     */
+    public static final class StatsEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_STATS).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        // Path segments of the different summaries, appended to the location setting
+        public static final String PATH_WEEKLY = "weekly";
+        public static final String PATH_RANGE = "range";
+        public static final String PATH_CONDITIONS = "conditions";
+
+        // Query parameters bounding the days summarized, both inclusive
+        public static final String QUERY_PARAM_START_DATE = "start";
+        public static final String QUERY_PARAM_END_DATE = "end";
+
+        // First and last day summarized by the row
+        public static final String COLUMN_START_DATE = "start_date";
+        public static final String COLUMN_END_DATE = "end_date";
+        // Number of days summarized by the row
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest and highest temperatures of the days
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Averages over the days
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max";
+        public static final String COLUMN_AVG_HUMIDITY = "avg_humidity";
+        public static final String COLUMN_AVG_PRESSURE = "avg_pressure";
+        public static final String COLUMN_AVG_WIND_SPEED = "avg_wind";
+
+        // Weather id counted by a row of the conditions histogram
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        /**
+         * Builds a uri for the lowest, highest and average values of each week, one row per
+         * week in date order.
+         */
+        public static Uri buildWeeklyStats(String locationSetting, long startDate, long endDate) {
+            return buildStatsUri(locationSetting, PATH_WEEKLY, startDate, endDate);
+        }
+
+        /**
+         * Builds a uri for the lowest, highest and average values over the whole range, in a
+         * single row.
+         */
+        public static Uri buildRangeStats(String locationSetting, long startDate, long endDate) {
+            return buildStatsUri(locationSetting, PATH_RANGE, startDate, endDate);
+        }
+
+        /**
+         * Builds a uri for the number of days of each weather condition, one row per weather id
+         * with the most frequent first.
+         */
+        public static Uri buildConditionStats(String locationSetting, long startDate, long endDate) {
+            return buildStatsUri(locationSetting, PATH_CONDITIONS, startDate, endDate);
+        }
+
+        /**
+         * @param startDate The first day to summarize, or 0 for the first day stored
+         * @param endDate The last day to summarize, or 0 for the last day stored
+         */
+        private static Uri buildStatsUri(String locationSetting, String summary,
+                                         long startDate, long endDate) {
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(summary);
+            if (startDate != 0) {
+                builder.appendQueryParameter(QUERY_PARAM_START_DATE,
+                        Long.toString(normalizeDate(startDate)));
+            }
+            if (endDate != 0) {
+                builder.appendQueryParameter(QUERY_PARAM_END_DATE,
+                        Long.toString(normalizeDate(endDate)));
+            }
+            return builder.build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            return getDateParameter(uri, QUERY_PARAM_START_DATE);
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            return getDateParameter(uri, QUERY_PARAM_END_DATE);
+        }
+
+        private static long getDateParameter(Uri uri, String parameter) {
+            String dateString = uri.getQueryParameter(parameter);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the hourly weather table.  The hours of a
+        day are stored in a single row, each series as a compact blob, and are only decoded into a
+        row per hour when they are queried.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "weather_hourly";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Day the hours belong to, normalized like the dates of the weather table
+        public static final String COLUMN_DATE = "date";
+        // Hour of the day of the first value of the series, and the number of values
+        public static final String COLUMN_FIRST_HOUR = "first_hour";
+        public static final String COLUMN_HOUR_COUNT = "hour_count";
+        // Encoded series, see buildHourlyValues
+        public static final String COLUMN_TEMPS = "temps";
+        public static final String COLUMN_PRECIPITATIONS = "precips";
+        public static final String COLUMN_WIND_SPEEDS = "winds";
+
+        // Columns of the rows of the hourly queries, one row per hour
+        // Start of the hour, stored as long in milliseconds since the epoch
+        public static final String COLUMN_TIME = "time";
+        public static final String COLUMN_TEMP = "temp";
+        // Precipitation over the hour, in mm
+        public static final String COLUMN_PRECIPITATION = "precip";
+        public static final String COLUMN_WIND_SPEED = "wind";
+
+        // Values are stored to a tenth of a degree, a tenth of a mm and a tenth of a m/s
+        static final double TEMP_RESOLUTION = 0.1;
+        static final double PRECIPITATION_RESOLUTION = 0.1;
+        static final double WIND_SPEED_RESOLUTION = 0.1;
+
+        // Query parameters bounding the hours queried, the start inclusive and the end exclusive
+        public static final String QUERY_PARAM_START_TIME = "start";
+        public static final String QUERY_PARAM_END_TIME = "end";
+
+        /**
+         * Builds the values to insert for the hours of a day.  The series must all have the
+         * same length.
+         *
+         * @param date The day, normalized by the provider on insert
+         * @param firstHour The hour of the day of the first values
+         */
+        public static ContentValues buildHourlyValues(long locationId, long date, int firstHour,
+                                                      double[] temps, double[] precipitations,
+                                                      double[] windSpeeds) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_LOC_KEY, locationId);
+            values.put(COLUMN_DATE, date);
+            values.put(COLUMN_FIRST_HOUR, firstHour);
+            values.put(COLUMN_HOUR_COUNT, temps.length);
+            values.put(COLUMN_TEMPS, HourlySeries.encode(temps, TEMP_RESOLUTION));
+            values.put(COLUMN_PRECIPITATIONS,
+                    HourlySeries.encode(precipitations, PRECIPITATION_RESOLUTION));
+            values.put(COLUMN_WIND_SPEEDS, HourlySeries.encode(windSpeeds, WIND_SPEED_RESOLUTION));
+            return values;
+        }
+
+        /**
+         * Builds the uri of the hours of a location from the start time, inclusive, to the end
+         * time, exclusive.  Either can be 0 to leave the range open on that side.
+         */
+        public static Uri buildHourlyLocationWithRange(String locationSetting, long startTime,
+                                                       long endTime) {
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(locationSetting);
+            if (startTime != 0) {
+                builder.appendQueryParameter(QUERY_PARAM_START_TIME, Long.toString(startTime));
+            }
+            if (endTime != 0) {
+                builder.appendQueryParameter(QUERY_PARAM_END_TIME, Long.toString(endTime));
+            }
+            return builder.build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(QUERY_PARAM_START_TIME);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return 0;
+        }
+
+        public static long getEndTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(QUERY_PARAM_END_TIME);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return 0;
+        }
+    }
 }
@@ -15,10 +15,14 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -28,71 +32,163 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Create a table to hold locations.  A location consists of the string supplied in the
+    // location setting, the city name, and the latitude and longitude
+    private static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry._ID + " INTEGER PRIMARY KEY," +
+            LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_GEOHASH + " TEXT " +
+            " );";
+
+    // Nearby locations are found by ranges of geohash prefixes
+    private static final String SQL_CREATE_LOCATION_GEOHASH_INDEX = "CREATE INDEX " +
+            LocationEntry.TABLE_NAME + "_" + LocationEntry.COLUMN_GEOHASH + " ON " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_GEOHASH + ");";
+
+    private static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+            // Why AutoIncrement here, and not above?
+            // Unique keys will be auto-generated in either case.  But for weather
+            // forecasting, it's reasonable to assume the user will want information
+            // for a certain date and all dates *following*, so the forecast data
+            // should be sorted accordingly.
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+            // the ID of the location entry associated with this weather data
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+            // Set up the location column as a foreign key to location table.
+            " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // To assure the application have just one weather entry per day
+            // per location, it's created a UNIQUE constraint with REPLACE strategy
+            " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // The archive is kept apart from the weather table, so the forecast queries don't have
+    // to skip over the history
+    private static final String SQL_CREATE_ARCHIVE_TABLE = "CREATE TABLE " + ArchiveEntry.TABLE_NAME + " (" +
+            ArchiveEntry._ID + " INTEGER PRIMARY KEY," +
+
+            ArchiveEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_PERIOD_DAYS + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+            ArchiveEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            ArchiveEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            ArchiveEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            ArchiveEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            ArchiveEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            ArchiveEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+
+            " FOREIGN KEY (" + ArchiveEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // One row per period per location, which also indexes the history queries
+            " UNIQUE (" + ArchiveEntry.COLUMN_LOC_KEY + ", " +
+            ArchiveEntry.COLUMN_PERIOD_START + ", " +
+            ArchiveEntry.COLUMN_PERIOD_DAYS + ") ON CONFLICT REPLACE);";
+
+    // The hours of a day are a single row, so the table stays as small as the weather table
+    private static final String SQL_CREATE_HOURLY_TABLE = "CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+            HourlyEntry._ID + " INTEGER PRIMARY KEY," +
+
+            HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            HourlyEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            HourlyEntry.COLUMN_FIRST_HOUR + " INTEGER NOT NULL, " +
+            HourlyEntry.COLUMN_HOUR_COUNT + " INTEGER NOT NULL, " +
+
+            HourlyEntry.COLUMN_TEMPS + " BLOB NOT NULL, " +
+            HourlyEntry.COLUMN_PRECIPITATIONS + " BLOB NOT NULL, " +
+            HourlyEntry.COLUMN_WIND_SPEEDS + " BLOB NOT NULL, " +
+
+            " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // One row per day per location, which also indexes the range queries
+            " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+            HourlyEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
-        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
-                LocationEntry._ID + " INTEGER PRIMARY KEY," +
-                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
-                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
-                " );";
-
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                // the ID of the location entry associated with this weather data
-                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
-
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
-
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
-
-                // Set up the location column as a foreign key to location table.
-                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
-
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
-
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_GEOHASH_INDEX);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < 3) {
+            // Until the archive, this database was only a cache for online data, so it's
+            // simply discarded and started over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // The archive holds history which can't be fetched again, so from then on each version
+        // is upgraded by a step of its own, which keeps the archive and the locations it refers
+        // to.
+        if (oldVersion < 4) {
+            sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                    LocationEntry.COLUMN_GEOHASH + " TEXT");
+            sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_GEOHASH_INDEX);
+            putGeohashes(sqLiteDatabase);
+        }
+        if (oldVersion < 5) {
+            sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
+        }
+    }
+
+    /**
+     * Sets the geohash of the locations saved before there was one, so they're found by the
+     * nearby queries.
+     */
+    private static void putGeohashes(SQLiteDatabase db) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{
+                        LocationEntry._ID,
+                        LocationEntry.COLUMN_COORD_LAT,
+                        LocationEntry.COLUMN_COORD_LONG},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ContentValues values = new ContentValues();
+                values.put(LocationEntry.COLUMN_COORD_LAT, cursor.getDouble(1));
+                values.put(LocationEntry.COLUMN_COORD_LONG, cursor.getDouble(2));
+                LocationIndex.putGeohash(values);
+                db.update(LocationEntry.TABLE_NAME, values, LocationEntry._ID + " = ?",
+                        new String[]{Long.toString(cursor.getLong(0))});
+            }
+        } finally {
+            cursor.close();
+        }
     }
 }
@@ -17,25 +17,46 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // The changes of the batch being applied on this thread, notified when it is done
+    private final ThreadLocal<WeatherChanges> mBatchChanges = new ThreadLocal<>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEARBY = 301;
+    static final int ARCHIVE = 400;
+    static final int ARCHIVE_WITH_LOCATION = 401;
+    static final int ARCHIVE_COMPACT = 402;
+    static final int STATS_WEEKLY = 500;
+    static final int STATS_RANGE = 501;
+    static final int STATS_CONDITIONS = 502;
+    static final int HOURLY = 600;
+    static final int HOURLY_WITH_LOCATION = 601;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sArchiveByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sHourlyByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,6 +70,26 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        //weather_archive INNER JOIN location ON weather_archive.location_id = location._id
+        sArchiveByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sArchiveByLocationSettingQueryBuilder.setTables(
+                WeatherContract.ArchiveEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.ArchiveEntry.TABLE_NAME +
+                        "." + WeatherContract.ArchiveEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+
+        //weather_hourly INNER JOIN location ON weather_hourly.location_id = location._id
+        sHourlyByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sHourlyByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HourlyEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HourlyEntry.TABLE_NAME +
+                        "." + WeatherContract.HourlyEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
     }
 
     //location.location_setting = ?
@@ -84,6 +125,38 @@ public class WeatherProvider extends ContentProvider {
         }
 
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder,
+                WeatherContract.WeatherEntry.getLimitFromUri(uri)
+        );
+    }
+
+    //location.location_setting = ? AND period_start >= ?
+    private static final String sLocationSettingWithStartPeriodSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.ArchiveEntry.COLUMN_PERIOD_START + " >= ? ";
+
+    private Cursor getArchiveByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.ArchiveEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.ArchiveEntry.getStartDateFromUri(uri);
+
+        String[] selectionArgs;
+        String selection;
+
+        if (startDate == 0) {
+            selection = sLocationSettingSelection;
+            selectionArgs = new String[]{locationSetting};
+        } else {
+            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
+            selection = sLocationSettingWithStartPeriodSelection;
+        }
+
+        return sArchiveByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
@@ -93,6 +166,151 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /*
+        Only the day rows covering the range are read here.  The hours are decoded by the cursor
+        as it is read, see HourlyCursor.
+     */
+    private Cursor getHourlyByLocationSetting(Uri uri, String[] projection) {
+        String locationSetting = WeatherContract.HourlyEntry.getLocationSettingFromUri(uri);
+        long startTime = WeatherContract.HourlyEntry.getStartTimeFromUri(uri);
+        long endTime = WeatherContract.HourlyEntry.getEndTimeFromUri(uri);
+
+        StringBuilder selection = new StringBuilder(sLocationSettingSelection);
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(locationSetting);
+        if (startTime != 0) {
+            // The day the start time falls in, and the days after it
+            selection.append(" AND ").append(WeatherContract.HourlyEntry.COLUMN_DATE)
+                    .append(" >= ? ");
+            selectionArgs.add(Long.toString(WeatherContract.normalizeDate(startTime)));
+        }
+        if (endTime != 0) {
+            selection.append(" AND ").append(WeatherContract.HourlyEntry.COLUMN_DATE)
+                    .append(" < ? ");
+            selectionArgs.add(Long.toString(endTime));
+        }
+
+        Cursor days = sHourlyByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                HourlyCursor.DAY_COLUMNS,
+                selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()]),
+                null,
+                null,
+                WeatherContract.HourlyEntry.COLUMN_DATE + " ASC"
+        );
+        return new HourlyCursor(days, projection, startTime, endTime);
+    }
+
+    // Ordered, as a null projection returns the columns in the order of the map
+    private static final LinkedHashMap<String, String> sTemperatureStatsProjectionMap =
+            new LinkedHashMap<>();
+    private static final LinkedHashMap<String, String> sConditionStatsProjectionMap =
+            new LinkedHashMap<>();
+
+    static {
+        final String date = WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                WeatherContract.WeatherEntry.COLUMN_DATE;
+        putAggregate(sTemperatureStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_START_DATE, "MIN(" + date + ")");
+        putAggregate(sTemperatureStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_END_DATE, "MAX(" + date + ")");
+        putAggregate(sTemperatureStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_DAY_COUNT, "COUNT(*)");
+        putAggregate(sTemperatureStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_MIN_TEMP,
+                "MIN(" + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ")");
+        putAggregate(sTemperatureStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_MAX_TEMP,
+                "MAX(" + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ")");
+        putAggregate(sTemperatureStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_AVG_MIN_TEMP,
+                "AVG(" + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ")");
+        putAggregate(sTemperatureStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_AVG_MAX_TEMP,
+                "AVG(" + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ")");
+        putAggregate(sTemperatureStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_AVG_HUMIDITY,
+                "AVG(" + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ")");
+        putAggregate(sTemperatureStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_AVG_PRESSURE,
+                "AVG(" + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ")");
+        putAggregate(sTemperatureStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_AVG_WIND_SPEED,
+                "AVG(" + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ")");
+
+        putAggregate(sConditionStatsProjectionMap, WeatherContract.StatsEntry.COLUMN_WEATHER_ID,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        putAggregate(sConditionStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_DAY_COUNT, "COUNT(*)");
+        putAggregate(sConditionStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_START_DATE, "MIN(" + date + ")");
+        putAggregate(sConditionStatsProjectionMap,
+                WeatherContract.StatsEntry.COLUMN_END_DATE, "MAX(" + date + ")");
+    }
+
+    private static void putAggregate(LinkedHashMap<String, String> map, String column,
+                                     String sql) {
+        map.put(column, sql + " AS " + column);
+    }
+
+    /*
+        Summaries are computed by SQLite in a single pass over the days in range, so only the
+        summary rows cross the process boundary, however many days they cover.
+     */
+    private Cursor getStats(Uri uri, int match, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.StatsEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.StatsEntry.getStartDateFromUri(uri);
+        long endDate = WeatherContract.StatsEntry.getEndDateFromUri(uri);
+
+        StringBuilder selection = new StringBuilder(sLocationSettingSelection);
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(locationSetting);
+        if (startDate != 0) {
+            selection.append(" AND ").append(WeatherContract.WeatherEntry.COLUMN_DATE)
+                    .append(" >= ? ");
+            selectionArgs.add(Long.toString(startDate));
+        }
+        if (endDate != 0) {
+            selection.append(" AND ").append(WeatherContract.WeatherEntry.COLUMN_DATE)
+                    .append(" <= ? ");
+            selectionArgs.add(Long.toString(endDate));
+        }
+
+        String groupBy;
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                WeatherContract.LocationEntry.TABLE_NAME +
+                " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                "." + WeatherContract.LocationEntry._ID);
+        switch (match) {
+            case STATS_WEEKLY:
+                builder.setProjectionMap(sTemperatureStatsProjectionMap);
+                groupBy = WeatherArchiver.weekBucket(WeatherContract.WeatherEntry.TABLE_NAME +
+                        "." + WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (sortOrder == null) {
+                    sortOrder = WeatherContract.StatsEntry.COLUMN_START_DATE + " ASC";
+                }
+                break;
+            case STATS_RANGE:
+                // Without a GROUP BY, the whole range is summarized in one row
+                builder.setProjectionMap(sTemperatureStatsProjectionMap);
+                groupBy = null;
+                break;
+            default:
+                builder.setProjectionMap(sConditionStatsProjectionMap);
+                groupBy = WeatherContract.WeatherEntry.COLUMN_WEATHER_ID;
+                if (sortOrder == null) {
+                    sortOrder = WeatherContract.StatsEntry.COLUMN_DAY_COUNT + " DESC, " +
+                            WeatherContract.StatsEntry.COLUMN_WEATHER_ID + " ASC";
+                }
+        }
+
+        return builder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()]),
+                groupBy,
+                null,
+                sortOrder
+        );
+    }
+
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
@@ -130,6 +348,23 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_NEARBY, LOCATION_NEARBY);
+
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, ARCHIVE);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/*", ARCHIVE_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/" +
+                WeatherContract.ArchiveEntry.PATH_COMPACT + "/#", ARCHIVE_COMPACT);
+
+        matcher.addURI(authority, WeatherContract.PATH_STATS + "/*/" +
+                WeatherContract.StatsEntry.PATH_WEEKLY, STATS_WEEKLY);
+        matcher.addURI(authority, WeatherContract.PATH_STATS + "/*/" +
+                WeatherContract.StatsEntry.PATH_RANGE, STATS_RANGE);
+        matcher.addURI(authority, WeatherContract.PATH_STATS + "/*/" +
+                WeatherContract.StatsEntry.PATH_CONDITIONS, STATS_CONDITIONS);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*", HOURLY_WITH_LOCATION);
         return matcher;
     }
 
@@ -163,7 +398,19 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
+            case LOCATION_NEARBY:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case ARCHIVE:
+            case ARCHIVE_WITH_LOCATION:
+                return WeatherContract.ArchiveEntry.CONTENT_TYPE;
+            case STATS_WEEKLY:
+            case STATS_CONDITIONS:
+                return WeatherContract.StatsEntry.CONTENT_TYPE;
+            case STATS_RANGE:
+                return WeatherContract.StatsEntry.CONTENT_ITEM_TYPE;
+            case HOURLY:
+            case HOURLY_WITH_LOCATION:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +460,54 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearby"
+            case LOCATION_NEARBY: {
+                retCursor = LocationIndex.queryNearby(mOpenHelper.getReadableDatabase(),
+                        projection,
+                        WeatherContract.LocationEntry.getLatFromUri(uri),
+                        WeatherContract.LocationEntry.getLongFromUri(uri),
+                        WeatherContract.LocationEntry.getRadiusFromUri(uri),
+                        WeatherContract.LocationEntry.getLimitFromUri(uri));
+                // Any location saved or removed can change what is nearby
+                retCursor.setNotificationUri(getContext().getContentResolver(),
+                        WeatherContract.LocationEntry.CONTENT_URI);
+                return retCursor;
+            }
+
+            // "archive/*"
+            case ARCHIVE_WITH_LOCATION: {
+                retCursor = getArchiveByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "stats/*/weekly", "stats/*/range" and "stats/*/conditions"
+            case STATS_WEEKLY:
+            case STATS_RANGE:
+            case STATS_CONDITIONS: {
+                retCursor = getStats(uri, sUriMatcher.match(uri), projection, sortOrder);
+                // The summaries change with the weather of the location they summarize
+                retCursor.setNotificationUri(getContext().getContentResolver(),
+                        WeatherContract.WeatherEntry.buildWeatherLocation(
+                                WeatherContract.StatsEntry.getLocationSettingFromUri(uri)));
+                return retCursor;
+            }
+            // "hourly/*"
+            case HOURLY_WITH_LOCATION: {
+                retCursor = getHourlyByLocationSetting(uri, projection);
+                break;
+            }
+            // "archive"
+            case ARCHIVE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.ArchiveEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -228,6 +523,7 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges();
         Uri returnUri;
 
         switch (match) {
@@ -238,20 +534,34 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addWeather(values);
+                break;
+            }
+            case HOURLY: {
+                normalizeDate(values);
+                long _id = db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(
+                            WeatherContract.HourlyEntry.CONTENT_URI, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addHourly(values);
                 break;
             }
             case LOCATION: {
+                LocationIndex.putGeohash(values);
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addUri(uri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        finishChanges(changes);
         return returnUri;
     }
 
@@ -259,24 +569,38 @@ public class WeatherProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges();
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
+                // The rows are looked up first, so only their locations and days are notified
+                changes.addWeatherRows(db, selection, selectionArgs, null);
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                changes.addUri(uri);
+                break;
+            case ARCHIVE:
+                rowsDeleted = db.delete(
+                        WeatherContract.ArchiveEntry.TABLE_NAME, selection, selectionArgs);
+                changes.addUri(uri);
+                break;
+            case HOURLY:
+                changes.addHourlyRows(db, selection, selectionArgs);
+                rowsDeleted = db.delete(
+                        WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            finishChanges(changes);
         }
         return rowsDeleted;
     }
@@ -294,23 +618,48 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final WeatherChanges changes = startChanges();
         int rowsUpdated;
 
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
+                changes.addWeatherRows(db, selection, selectionArgs, values);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                        || values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+                    // Rows moved to another location or day change that one too
+                    changes.addWeather(values);
+                }
                 break;
             case LOCATION:
+                LocationIndex.putGeohash(values);
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                changes.addUri(uri);
                 break;
+            case ARCHIVE_COMPACT:
+                // There's no ContentProvider.call on the oldest platforms we support, so running
+                // the compaction is an update of the compaction uri.  The values are ignored.
+                rowsUpdated = WeatherArchiver.compact(db,
+                        WeatherContract.ArchiveEntry.getCutoffDateFromUri(uri));
+                if (rowsUpdated != 0) {
+                    ForecastRepository.invalidate(null);
+                    ForecastChangeFeed.publish(ForecastChange.everything());
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.WeatherEntry.CONTENT_URI, null);
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.ArchiveEntry.CONTENT_URI, null);
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.HourlyEntry.CONTENT_URI, null);
+                }
+                return rowsUpdated;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            finishChanges(changes);
         }
         return rowsUpdated;
     }
@@ -321,27 +670,78 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+            case HOURLY:
+                String table = match == WEATHER ? WeatherContract.WeatherEntry.TABLE_NAME
+                        : WeatherContract.HourlyEntry.TABLE_NAME;
+                WeatherChanges changes = startChanges();
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = db.insert(table, null, value);
                         if (_id != -1) {
                             returnCount++;
+                            if (match == WEATHER) {
+                                changes.addWeather(value);
+                            } else {
+                                changes.addHourly(value);
+                            }
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                // One notification per location for the whole transaction
+                finishChanges(changes);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        The operations of a batch run in one transaction, and their observers are notified once
+        it has been committed, rather than once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherChanges changes = new WeatherChanges();
+        mBatchChanges.set(changes);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+        changes.notifyObservers(getContext().getContentResolver(), db);
+        return results;
+    }
+
+    /**
+     * @return where the changes of an operation are gathered, the batch's if one is being applied
+     */
+    private WeatherChanges startChanges() {
+        WeatherChanges changes = mBatchChanges.get();
+        return changes != null ? changes : new WeatherChanges();
+    }
+
+    /**
+     * Notifies the changes of an operation, unless they are part of a batch which will.
+     */
+    private void finishChanges(WeatherChanges changes) {
+        if (changes != mBatchChanges.get()) {
+            changes.notifyObservers(getContext().getContentResolver(),
+                    mOpenHelper.getReadableDatabase());
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
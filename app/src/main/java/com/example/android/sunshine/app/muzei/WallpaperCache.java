@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/**
+ * Disk cache of the Muzei wallpapers, downscaled to the size of the device's screen.
+ *
+ * The Wikimedia originals are several megabytes each, so every condition image is downloaded
+ * once, resized and kept as a JPEG in the app's cache directory, where
+ * {@link WallpaperProvider} serves it to Muzei.  The provider isn't exported, Muzei is granted
+ * read access to each cached image instead, until it's evicted.  The least recently used files
+ * are evicted once the cache holds more than {@link #MAX_ENTRIES} images or
+ * {@link #MAX_SIZE_BYTES} bytes.
+ */
+public class WallpaperCache {
+    private static final String LOG_TAG = WallpaperCache.class.getSimpleName();
+
+    private static final String CACHE_DIR = "wallpapers";
+    private static final String FILE_EXTENSION = ".jpg";
+    // Cached files are named after the SHA-1 digest of the image url
+    static final Pattern FILE_NAME_PATTERN = Pattern.compile("[0-9a-f]{40}\\.jpg");
+    // Named after the 32 bit hash of the url before, which could collide
+    private static final Pattern OLD_FILE_NAME_PATTERN = Pattern.compile("[0-9a-f]{8}\\.jpg");
+
+    // Muzei reads the wallpapers from its own process
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
+    static final int MAX_ENTRIES = 8;
+    static final long MAX_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private static final int JPEG_QUALITY = 90;
+    // The decoded image may be subsampled down to this fraction of the screen, Muzei scales it
+    // up the rest of the way, so that it never has to be decoded at up to twice the screen size
+    private static final float MIN_SCREEN_COVERAGE = 0.75f;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    private WallpaperCache() {
+    }
+
+    /**
+     * Returns a content uri for a downscaled copy of the given image, downloading and resizing it
+     * first if it isn't cached yet.  This does network and disk I/O, so it must not be called from
+     * the UI thread.
+     *
+     * @param context Context used to reach the cache directory and the display metrics
+     * @param imageUrl The url of the full resolution image
+     * @return the content uri of the cached copy, or null if it couldn't be created
+     */
+    public static Uri getCachedImageUri(Context context, String imageUrl) {
+        File cacheDir = getCacheDir(context);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create " + cacheDir);
+            return null;
+        }
+
+        String fileName = getFileName(imageUrl);
+        File cachedFile = new File(cacheDir, fileName);
+        if (cachedFile.isFile()) {
+            // Mark it as recently used
+            cachedFile.setLastModified(System.currentTimeMillis());
+        } else if (!download(context, imageUrl, cacheDir, cachedFile)) {
+            return null;
+        }
+        evict(context, cacheDir);
+        Uri uri = WallpaperProvider.buildWallpaperUri(fileName);
+        context.grantUriPermission(MUZEI_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return uri;
+    }
+
+    static File getCacheDir(Context context) {
+        return new File(context.getCacheDir(), CACHE_DIR);
+    }
+
+    private static String getFileName(String imageUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(imageUrl.getBytes(Charset.forName("UTF-8")));
+            StringBuilder name = new StringBuilder(digest.length * 2 + FILE_EXTENSION.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(FILE_EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean download(Context context, String imageUrl, File cacheDir,
+                                    File cachedFile) {
+        File originalFile = new File(cacheDir, cachedFile.getName() + ".download");
+        File resizedFile = new File(cacheDir, cachedFile.getName() + ".tmp");
+        HttpURLConnection urlConnection = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(imageUrl).openConnection();
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.w(LOG_TAG, "Unexpected response " + urlConnection.getResponseCode()
+                        + " for " + imageUrl);
+                return false;
+            }
+            // The original has to be read twice, once for its size and once to decode it, so it
+            // goes to disk first rather than into memory
+            copy(new BufferedInputStream(urlConnection.getInputStream()),
+                    new FileOutputStream(originalFile));
+
+            Bitmap bitmap = decodeForScreen(context, originalFile);
+            if (bitmap == null) {
+                Log.w(LOG_TAG, "Unable to decode " + imageUrl);
+                return false;
+            }
+            OutputStream out = new FileOutputStream(resizedFile);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+                bitmap.recycle();
+            }
+            // Only complete files are ever visible under the cached name
+            return resizedFile.renameTo(cachedFile);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching wallpaper from " + imageUrl, e);
+            return false;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            originalFile.delete();
+            resizedFile.delete();
+        }
+    }
+
+    /**
+     * Decodes the image so that it still covers most of the screen in either orientation, since
+     * Muzei crops and pans the wallpaper rather than letterboxing it.  JPEGs have no alpha, so
+     * it's decoded to RGB_565, at half the memory of ARGB_8888.
+     */
+    private static Bitmap decodeForScreen(Context context, File file) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int targetSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Subsample by the largest power of two that keeps the short side above the minimum
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        int minSize = Math.round(targetSize * MIN_SCREEN_COVERAGE);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= minSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+        if (sampled == null) {
+            return null;
+        }
+
+        // Then scale the rest of the way down
+        int sampledShortSide = Math.min(sampled.getWidth(), sampled.getHeight());
+        if (sampledShortSide <= targetSize) {
+            return sampled;
+        }
+        float scale = (float) targetSize / sampledShortSide;
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+                Math.round(sampled.getWidth() * scale),
+                Math.round(sampled.getHeight() * scale), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private static void evict(Context context, File cacheDir) {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Most recently used first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified > rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        int entries = 0;
+        long totalSize = 0;
+        for (File file : files) {
+            if (OLD_FILE_NAME_PATTERN.matcher(file.getName()).matches()) {
+                file.delete();
+                continue;
+            }
+            if (!FILE_NAME_PATTERN.matcher(file.getName()).matches()) {
+                continue;
+            }
+            long size = file.length();
+            // Always keep the most recent entry, it's the one being published
+            if (entries > 0 && (entries + 1 > MAX_ENTRIES || totalSize + size > MAX_SIZE_BYTES)) {
+                Log.d(LOG_TAG, "Evicting " + file.getName());
+                file.delete();
+                context.revokeUriPermission(WallpaperProvider.buildWallpaperUri(file.getName()),
+                        Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } else {
+                entries++;
+                totalSize += size;
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
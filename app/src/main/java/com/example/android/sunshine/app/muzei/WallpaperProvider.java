@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Read-only provider which hands the wallpapers in {@link WallpaperCache} to Muzei.  It isn't
+ * exported, Muzei runs in its own process and reads each wallpaper through the uri permission
+ * the cache grants it.  It only ever serves files from the cache directory whose names match the
+ * cache's naming scheme.
+ */
+public class WallpaperProvider extends ContentProvider {
+    public static final String AUTHORITY = "com.example.android.sunshine.app.wallpaper";
+    private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + AUTHORITY);
+
+    static Uri buildWallpaperUri(String fileName) {
+        return BASE_CONTENT_URI.buildUpon().appendPath(fileName).build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Wallpapers are read-only: " + uri);
+        }
+        String fileName = uri.getLastPathSegment();
+        if (uri.getPathSegments().size() != 1 || fileName == null
+                || !WallpaperCache.FILE_NAME_PATTERN.matcher(fileName).matches()) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        File file = new File(WallpaperCache.getCacheDir(getContext()), fileName);
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Wallpapers are read-only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Wallpapers are read-only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Wallpapers are read-only: " + uri);
+    }
+}
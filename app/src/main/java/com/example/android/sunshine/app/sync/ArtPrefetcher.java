@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.stream.StreamModelLoader;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warms Glide's disk cache with the weather art of a freshly synced forecast, so that the list,
+ * the detail view, the widgets, the notification and the wearable all render from cache instead
+ * of waiting on the network the first time they show the new conditions.
+ *
+ * The art is cached as source data, which is why every consumer loads it with
+ * {@link com.bumptech.glide.load.engine.DiskCacheStrategy#ALL}: each of them then decodes the
+ * cached source at whatever size it needs.
+ */
+public class ArtPrefetcher {
+    private static final String LOG_TAG = ArtPrefetcher.class.getSimpleName();
+
+    // How many art urls are downloaded at the same time
+    static final int MAX_CONCURRENT_FETCHES = 3;
+    // How long a single download may take before it's counted as failed, in seconds
+    static final long PREFETCH_TIMEOUT_SECONDS = 30;
+
+    private static final String PREFS_NAME = "art_prefetch";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+    private static final String KEY_FAILURES = "failures";
+    private static final String KEY_SKIPPED_METERED = "skipped_metered";
+
+    // The fetches run here rather than on the sync thread, so the sync never waits for the art.
+    // The threads go away when there's nothing to fetch.
+    private static final ThreadPoolExecutor sExecutor;
+    static {
+        sExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_FETCHES, MAX_CONCURRENT_FETCHES,
+                PREFETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Loads art from Glide's disk cache only.  The fetcher it gives Glide has the same id as the
+     * one for a url, so Glide finds the cached source under the same key, and it fails rather than
+     * touching the network when there's none.
+     */
+    private static final StreamModelLoader<String> CACHE_ONLY_LOADER =
+            new StreamModelLoader<String>() {
+                @Override
+                public DataFetcher<InputStream> getResourceFetcher(final String artUrl,
+                        int width, int height) {
+                    return new DataFetcher<InputStream>() {
+                        @Override
+                        public InputStream loadData(Priority priority) throws Exception {
+                            throw new IOException("Not cached: " + artUrl);
+                        }
+
+                        @Override
+                        public void cleanup() {
+                        }
+
+                        @Override
+                        public String getId() {
+                            return artUrl;
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    };
+                }
+            };
+
+    private ArtPrefetcher() {
+    }
+
+    /**
+     * Starts downloading the art for each of the given weather conditions once, using the art
+     * pack the user has selected, and returns without waiting for it.  Consumers showing the new
+     * forecast before the art is in load it from the network as they would have anyway.
+     *
+     * @param context Context used to reach Glide and the preferences
+     * @param weatherIds The weather condition ids of the new forecast, duplicates allowed
+     */
+    public static void prefetch(Context context, int[] weatherIds) {
+        if (Utility.usingLocalGraphics(context)) {
+            // The bundled art is already on the device
+            return;
+        }
+
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (ConnectivityManagerCompat.isActiveNetworkMetered(cm)) {
+            // Don't spend the user's data plan on pictures, they'll be loaded on demand instead
+            count(context, KEY_SKIPPED_METERED);
+            Log.d(LOG_TAG, "Skipping art prefetch on a metered network");
+            return;
+        }
+
+        // Several condition ids share the same art, so only fetch each url once
+        LinkedHashSet<String> artUrls = new LinkedHashSet<>();
+        for (int weatherId : weatherIds) {
+            String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+            if (artUrl != null) {
+                artUrls.add(artUrl);
+            }
+        }
+
+        final Context appContext = context.getApplicationContext();
+        for (final String artUrl : artUrls) {
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fetch(appContext, artUrl);
+                }
+            });
+        }
+    }
+
+    private static void fetch(Context context, String artUrl) {
+        try {
+            if (isCached(context, artUrl)) {
+                count(context, KEY_HITS);
+                return;
+            }
+            Glide.with(context)
+                    .load(artUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get(PREFETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            count(context, KEY_MISSES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            count(context, KEY_FAILURES);
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(LOG_TAG, "Error prefetching art from " + artUrl, e);
+            count(context, KEY_FAILURES);
+        }
+    }
+
+    private static boolean isCached(Context context, String artUrl) throws InterruptedException {
+        try {
+            Glide.with(context)
+                    .using(CACHE_ONLY_LOADER)
+                    .load(artUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get();
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private static synchronized void count(Context context, String key) {
+        SharedPreferences stats = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        stats.edit().putInt(key, stats.getInt(key, 0) + 1).apply();
+    }
+
+    /**
+     * @return the fraction of prefetched art that was already in Glide's disk cache.
+     */
+    public static float getHitRate(Context context) {
+        SharedPreferences stats = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int hits = stats.getInt(KEY_HITS, 0);
+        int total = hits + stats.getInt(KEY_MISSES, 0);
+        return total == 0 ? 0f : (float) hits / total;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Applies a forecast delta pushed through GCM straight to the content provider, so that a change
+ * in the forecast shows up within seconds instead of at the next periodic sync.
+ *
+ * A delta names a location, the first day that changed and, for each consecutive day, only the
+ * columns whose value changed:
+ * <pre>
+ * {"location": "94043", "start": 1419033600000,
+ *  "days": [{"weather_id": 502, "short_desc": "Rain", "max": 14.2}, {"min": 6.1}]}
+ * </pre>
+ * If a day isn't stored locally or the delta can't be read, the preferred location is synced
+ * in full instead.
+ */
+public class ForecastDeltaService extends IntentService {
+    private static final String LOG_TAG = ForecastDeltaService.class.getSimpleName();
+
+    public static final String EXTRA_DELTA = "delta";
+
+    private static final String DELTA_LOCATION = "location";
+    private static final String DELTA_START = "start";
+    private static final String DELTA_DAYS = "days";
+
+    // The columns a delta is allowed to change
+    private static final HashSet<String> UPDATABLE_COLUMNS = new HashSet<>();
+    static {
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+        UPDATABLE_COLUMNS.add(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+    }
+
+    public ForecastDeltaService() {
+        super("ForecastDeltaService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String delta = intent.getStringExtra(EXTRA_DELTA);
+        if (delta == null) {
+            return;
+        }
+        String preferredLocation = Utility.getPreferredLocation(this);
+        String location = null;
+        try {
+            JSONObject deltaJson = new JSONObject(delta);
+            location = deltaJson.getString(DELTA_LOCATION);
+            if (applyDelta(this, location, deltaJson.getLong(DELTA_START),
+                    deltaJson.getJSONArray(DELTA_DAYS))) {
+                Log.d(LOG_TAG, "Applied forecast delta for " + location);
+                ForecastSnapshot.update(this, location);
+                SunshineSyncAdapter.notifyForecastChanged(this);
+                return;
+            }
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Invalid forecast delta: " + delta, e);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error applying forecast delta", e);
+        }
+
+        // Only the preferred location is ever synced, others are refreshed when they're selected
+        if (location == null || location.equals(preferredLocation)) {
+            Log.d(LOG_TAG, "Falling back to a full sync");
+            SunshineSyncAdapter.syncImmediately(this, true);
+        }
+    }
+
+    /**
+     * Updates the stored days covered by the delta, but only if all of them are present.
+     *
+     * @return true if the delta was applied
+     */
+    static boolean applyDelta(Context context, String location, long start, JSONArray days)
+            throws JSONException, RemoteException, OperationApplicationException {
+        Cursor locationCursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{location},
+                null);
+        long locationId;
+        try {
+            if (!locationCursor.moveToFirst()) {
+                Log.d(LOG_TAG, "No forecast stored for " + location);
+                return false;
+            }
+            locationId = locationCursor.getLong(0);
+        } finally {
+            locationCursor.close();
+        }
+
+        // Same day arithmetic as the sync adapter, so the dates match the stored ones
+        Time dayTime = new Time();
+        dayTime.set(start);
+        int julianStartDay = Time.getJulianDay(start, dayTime.gmtoff);
+        dayTime = new Time();
+
+        String selection = WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(days.length());
+        ArrayList<String> dates = new ArrayList<>(days.length());
+        for (int i = 0; i < days.length(); i++) {
+            long date = dayTime.setJulianDay(julianStartDay + i);
+            ContentValues values = parseDay(days.getJSONObject(i));
+            if (values.size() == 0) {
+                continue;
+            }
+            dates.add(Long.toString(date));
+            operations.add(ContentProviderOperation
+                    .newUpdate(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(selection,
+                            new String[]{Long.toString(locationId), Long.toString(date)})
+                    .withValues(values)
+                    .build());
+        }
+        if (operations.isEmpty()) {
+            return true;
+        }
+
+        // Make sure every day is there before touching any of them
+        Cursor existing = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(locationId), dates.get(0), dates.get(dates.size() - 1)},
+                null);
+        HashSet<String> storedDates = new HashSet<>();
+        try {
+            while (existing.moveToNext()) {
+                storedDates.add(Long.toString(existing.getLong(0)));
+            }
+        } finally {
+            existing.close();
+        }
+        if (!storedDates.containsAll(dates)) {
+            Log.d(LOG_TAG, "Forecast delta for " + location + " covers days that aren't stored");
+            return false;
+        }
+
+        context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        return true;
+    }
+
+    private static ContentValues parseDay(JSONObject day) throws JSONException {
+        ContentValues values = new ContentValues();
+        Iterator<String> keys = day.keys();
+        while (keys.hasNext()) {
+            String column = keys.next();
+            if (!UPDATABLE_COLUMNS.contains(column)) {
+                throw new JSONException("Unexpected field in forecast delta: " + column);
+            }
+            if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                values.put(column, day.getString(column));
+            } else if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(column)
+                    || WeatherContract.WeatherEntry.COLUMN_HUMIDITY.equals(column)) {
+                values.put(column, day.getInt(column));
+            } else {
+                values.put(column, day.getDouble(column));
+            }
+        }
+        return values;
+    }
+}
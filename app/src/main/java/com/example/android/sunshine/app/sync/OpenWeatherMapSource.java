@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Fetches the daily forecast from OpenWeatherMap.
+ */
+class OpenWeatherMapSource implements WeatherSource {
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private final int mTimeoutMillis;
+
+    /**
+     * @param timeoutMillis How long to wait for the connection, and then for the response
+     */
+    OpenWeatherMapSource(int timeoutMillis) {
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "OpenWeatherMap";
+    }
+
+    @Override
+    public SourceForecast fetch(String locationSetting, int numDays)
+            throws IOException, WeatherSourceException {
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+
+        String format = "json";
+        String units = "metric";
+
+        try {
+            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM, locationSetting)
+                    .appendQueryParameter(FORMAT_PARAM, format)
+                    .appendQueryParameter(UNITS_PARAM, units)
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+
+            URL url = new URL(builtUri.toString());
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            // A source which takes too long is dropped, so don't keep its thread waiting either
+            urlConnection.setConnectTimeout(mTimeoutMillis);
+            urlConnection.setReadTimeout(mTimeoutMillis);
+            urlConnection.connect();
+
+            // Read the input stream into a String
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                throw new IOException("No response from " + getName());
+            }
+            StringBuilder buffer = new StringBuilder();
+            reader = new BufferedReader(new InputStreamReader(inputStream));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                // But it does make debugging a *lot* easier if you print out the completed
+                // buffer for debugging.
+                buffer.append(line).append('\n');
+            }
+
+            if (buffer.length() == 0) {
+                // Stream was empty.  No point in parsing.
+                throw new IOException("Empty response from " + getName());
+            }
+            return parseForecast(buffer.toString());
+        } catch (JSONException e) {
+            throw new WeatherSourceException(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID,
+                    "Invalid response from " + getName(), e);
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    // The response has been read already
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need.
+     *
+     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
+     * into an Object hierarchy for us.
+     */
+    static SourceForecast parseForecast(String forecastJsonStr)
+            throws JSONException, WeatherSourceException {
+
+        // These are the names of the JSON objects that need to be extracted.
+
+        // Location information
+        final String OWM_CITY = "city";
+        final String OWM_CITY_NAME = "name";
+        final String OWM_COORD = "coord";
+
+        // Location coordinate
+        final String OWM_LATITUDE = "lat";
+        final String OWM_LONGITUDE = "lon";
+
+        // Weather information.  Each day's forecast info is an element of the "list" array.
+        final String OWM_LIST = "list";
+
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+
+        // All temperatures are children of the "temp" object.
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_MAX = "max";
+        final String OWM_MIN = "min";
+
+        final String OWM_WEATHER = "weather";
+        final String OWM_DESCRIPTION = "main";
+        final String OWM_WEATHER_ID = "id";
+
+        final String OWM_MESSAGE_CODE = "cod";
+
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+
+            switch (errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    throw new WeatherSourceException(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                            "Location not found");
+                default:
+                    throw new WeatherSourceException(
+                            SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                            "Error code " + errorCode);
+            }
+        }
+
+        SourceForecast forecast = new SourceForecast();
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.coordLat = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.coordLong = cityCoord.getDouble(OWM_LONGITUDE);
+
+        // OWM returns daily forecasts in order, and the first day is always the current day
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            SourceForecast.Day day = new SourceForecast.Day();
+
+            day.pressure = dayForecast.getDouble(OWM_PRESSURE);
+            day.humidity = (double) dayForecast.getInt(OWM_HUMIDITY);
+            day.windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            day.windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            day.description = weatherObject.getString(OWM_DESCRIPTION);
+            day.weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            day.high = temperatureObject.getDouble(OWM_MAX);
+            day.low = temperatureObject.getDouble(OWM_MIN);
+
+            forecast.days.add(day);
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.util.ArrayList;
+
+/**
+ * A forecast as one {@link WeatherSource} provides it.
+ *
+ * Every field is nullable, as sources don't all provide the same ones, and a day can be missing
+ * altogether.  Days are in order from today, so the index of a day is its offset from today.
+ */
+class SourceForecast {
+    String cityName;
+    Double coordLat;
+    Double coordLong;
+
+    // May contain nulls, for the days the source skipped
+    final ArrayList<Day> days = new ArrayList<>();
+
+    static class Day {
+        Integer weatherId;
+        String description;
+        Double high;
+        Double low;
+        Double humidity;
+        Double pressure;
+        Double windSpeed;
+        Double windDirection;
+
+        // Optional hourly series of the day, all the same length, from the given hour of the day
+        int firstHour;
+        double[] hourlyTemps;
+        double[] hourlyPrecipitations;
+        double[] hourlyWindSpeeds;
+
+        /**
+         * @return whether the day has every field a day is stored with
+         */
+        boolean isComplete() {
+            return weatherId != null && description != null && high != null && low != null
+                    && humidity != null && pressure != null && windSpeed != null
+                    && windDirection != null;
+        }
+
+        /**
+         * @return whether the day has all of its optional hourly series
+         */
+        boolean hasHours() {
+            return hourlyTemps != null && hourlyPrecipitations != null
+                    && hourlyWindSpeeds != null;
+        }
+    }
+}
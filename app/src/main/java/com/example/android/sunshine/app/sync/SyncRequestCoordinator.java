@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+/**
+ * Single-flight layer in front of the immediate syncs.
+ *
+ * Requests arriving within {@link #MERGE_WINDOW_MILLIS} of each other are merged into one, a
+ * request for the location that is already being synced joins that sync instead of queueing
+ * another one, and a location whose forecast was fetched less than {@link #FRESHNESS_MILLIS} ago
+ * isn't fetched again unless the request is forced.
+ *
+ * The merge window is an alarm rather than a delayed message, since requests are made just
+ * before services stop and the process can be killed before the window closes.  Forced and
+ * unforced requests have alarms of their own, so a forced request merged with later ones isn't
+ * lost along with the process.
+ */
+class SyncRequestCoordinator {
+    private static final String LOG_TAG = SyncRequestCoordinator.class.getSimpleName();
+
+    static final long MERGE_WINDOW_MILLIS = 500;
+    static final long FRESHNESS_MILLIS = 30 * DateUtils.MINUTE_IN_MILLIS;
+    // A requested sync which hasn't started after this long is assumed to have been dropped
+    private static final long PENDING_TIMEOUT_MILLIS = 2 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static final String PREFS_NAME = "sync_requests";
+    private static final String KEY_LAST_SUCCESS_PREFIX = "last_success_";
+
+    static final String EXTRA_FORCE = "force";
+    private static final int REQUEST_UNFORCED = 0;
+    private static final int REQUEST_FORCED = 1;
+
+    private static final Object sLock = new Object();
+
+    // All guarded by sLock
+    private static String sRequestedLocation;
+    private static long sRequestedAt;
+    private static String sRunningLocation;
+
+    private SyncRequestCoordinator() {
+    }
+
+    /**
+     * Queues an immediate sync of the preferred location, merged with the other requests made
+     * within the merge window.
+     *
+     * @param force true to fetch the forecast even if the stored one is still fresh
+     */
+    static void requestSync(Context context, boolean force) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        synchronized (sLock) {
+            // While a forced request is pending, the window is its own, and it covers the
+            // unforced requests merged into it
+            boolean forced = force || getPendingRequest(context, true) != null;
+            if (forced) {
+                PendingIntent unforced = getPendingRequest(context, false);
+                if (unforced != null) {
+                    alarmManager.cancel(unforced);
+                    unforced.cancel();
+                }
+            }
+            // The same pending intent replaces the alarm set for the previous request
+            PendingIntent request = PendingIntent.getBroadcast(context,
+                    forced ? REQUEST_FORCED : REQUEST_UNFORCED,
+                    createRequestIntent(context, forced), PendingIntent.FLAG_UPDATE_CURRENT);
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                    SystemClock.elapsedRealtime() + MERGE_WINDOW_MILLIS, request);
+        }
+    }
+
+    /**
+     * Called by {@link SyncRequestReceiver} when the merge window of the requests closes.
+     */
+    static void onMergeWindowClosed(Context context, boolean force) {
+        synchronized (sLock) {
+            // So that the next request opens a new window
+            PendingIntent request = getPendingRequest(context, force);
+            if (request != null) {
+                request.cancel();
+            }
+        }
+        dispatch(context, force);
+    }
+
+    private static Intent createRequestIntent(Context context, boolean force) {
+        return new Intent(context, SyncRequestReceiver.class).putExtra(EXTRA_FORCE, force);
+    }
+
+    /**
+     * @return the request whose merge window is open, or null if there's none
+     */
+    private static PendingIntent getPendingRequest(Context context, boolean force) {
+        return PendingIntent.getBroadcast(context, force ? REQUEST_FORCED : REQUEST_UNFORCED,
+                createRequestIntent(context, force), PendingIntent.FLAG_NO_CREATE);
+    }
+
+    private static void dispatch(Context context, boolean force) {
+        String location = Utility.getPreferredLocation(context);
+        synchronized (sLock) {
+            if (location.equals(sRunningLocation)) {
+                Log.d(LOG_TAG, "Joining the running sync of " + location);
+                return;
+            }
+            if (location.equals(sRequestedLocation)
+                    && SystemClock.elapsedRealtime() - sRequestedAt < PENDING_TIMEOUT_MILLIS) {
+                Log.d(LOG_TAG, "Joining the pending sync of " + location);
+                return;
+            }
+            if (!force && isFresh(context, location)) {
+                Log.d(LOG_TAG, "Skipping sync, the forecast for " + location + " is fresh");
+                // The location was valid when it was fetched, so don't leave it marked unknown
+                SunshineSyncAdapter.setLocationStatus(context,
+                        SunshineSyncAdapter.LOCATION_STATUS_OK);
+                return;
+            }
+            sRequestedLocation = location;
+            sRequestedAt = SystemClock.elapsedRealtime();
+        }
+
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        ContentResolver.requestSync(SunshineSyncAdapter.getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
+    /**
+     * Called by the sync adapter when it starts fetching the given location.
+     */
+    static void onSyncStarted(String location) {
+        synchronized (sLock) {
+            sRunningLocation = location;
+            if (location.equals(sRequestedLocation)) {
+                sRequestedLocation = null;
+            }
+        }
+    }
+
+    /**
+     * Called by the sync adapter once it's done with the given location, whether it succeeded
+     * or not.
+     */
+    static void onSyncFinished(String location) {
+        synchronized (sLock) {
+            if (location.equals(sRunningLocation)) {
+                sRunningLocation = null;
+            }
+        }
+    }
+
+    /**
+     * Records that a forecast for the given location was just stored.
+     */
+    static void onSyncSucceeded(Context context, String location) {
+        getPrefs(context).edit()
+                .putLong(KEY_LAST_SUCCESS_PREFIX + location, System.currentTimeMillis())
+                .apply();
+    }
+
+    private static boolean isFresh(Context context, String location) {
+        long lastSuccess = getPrefs(context).getLong(KEY_LAST_SUCCESS_PREFIX + location, 0);
+        long age = System.currentTimeMillis() - lastSuccess;
+        return age >= 0 && age < FRESHNESS_MILLIS;
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
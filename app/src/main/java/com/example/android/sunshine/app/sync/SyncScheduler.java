@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Decides when the weather should be synced next.
+ *
+ * The periodic sync interval follows how much the forecast has been changing between syncs and
+ * how often the app is opened, failed syncs are retried with exponential backoff and jitter, and
+ * routine syncs are deferred while the device is on a metered network and not charging, as long
+ * as the stored forecast is still fresh.  Every decision is appended to a bounded log, see
+ * {@link #getDecisionLog(Context)}.
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    // Extra set on the syncs requested by the backoff alarm
+    static final String EXTRA_RETRY = "com.example.android.sunshine.app.sync.extra.RETRY";
+
+    // Bounds of the adaptive periodic sync interval, in seconds
+    static final int MIN_SYNC_INTERVAL = 60 * 60;
+    static final int MAX_SYNC_INTERVAL = 60 * 60 * 12;
+    // Forecast changes are pushed through GCM when it's available, so polling can be much rarer
+    static final int PUSH_INTERVAL_FACTOR = 3;
+    static final int MAX_PUSH_SYNC_INTERVAL = 60 * 60 * 24;
+    // The interval is rounded to this granularity so small changes don't reschedule the sync
+    private static final int SYNC_INTERVAL_STEP = 60 * 15;
+
+    // Mean change, in degrees Celsius per day, above which the forecast is considered volatile
+    static final float HIGH_VOLATILITY = 3f;
+    // ... and below which it is considered stable
+    static final float LOW_VOLATILITY = 1f;
+    // A change of weather condition group counts as this many degrees
+    private static final float CONDITION_CHANGE_WEIGHT = 3f;
+    // Number of upcoming days compared between syncs
+    private static final int VOLATILITY_DAYS = 3;
+    // Weight of the latest sync in the moving average of the volatility
+    private static final float VOLATILITY_SMOOTHING = 0.5f;
+
+    // App opens are counted over this window
+    private static final long USAGE_WINDOW_MILLIS = DateUtils.WEEK_IN_MILLIS;
+    private static final int MAX_TRACKED_OPENS = 100;
+    static final float FREQUENT_OPENS_PER_DAY = 6f;
+    static final float RARE_OPENS_PER_DAY = 1f;
+
+    // Backoff applied to server errors
+    static final long INITIAL_BACKOFF_MILLIS = 30 * DateUtils.SECOND_IN_MILLIS;
+    static final long MAX_BACKOFF_MILLIS = DateUtils.HOUR_IN_MILLIS;
+    static final int MAX_RETRIES = 6;
+
+    // Stored forecasts younger than this are not refreshed on a metered, discharging device
+    static final long DEFERRABLE_DATA_AGE_MILLIS = 12 * DateUtils.HOUR_IN_MILLIS;
+
+    private static final int MAX_LOG_ENTRIES = 50;
+
+    private static final String PREFS_NAME = "sync_scheduler";
+    private static final String KEY_SYNC_INTERVAL = "sync_interval";
+    private static final String KEY_VOLATILITY = "volatility";
+    private static final String KEY_LAST_FORECAST = "last_forecast";
+    private static final String KEY_LAST_LOCATION = "last_location";
+    private static final String KEY_LAST_SUCCESS = "last_success";
+    private static final String KEY_APP_OPENS = "app_opens";
+    private static final String KEY_RETRY_ATTEMPT = "retry_attempt";
+    private static final String KEY_DECISION_LOG = "decision_log";
+
+    private static final Random sRandom = new Random();
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Records that the user opened the app, which feeds into the sync interval.
+     */
+    public static void recordAppOpen(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        long now = System.currentTimeMillis();
+        List<String> opens = pruneOpens(prefs.getString(KEY_APP_OPENS, ""), now);
+        opens.add(Long.toString(now));
+        if (opens.size() > MAX_TRACKED_OPENS) {
+            opens = opens.subList(opens.size() - MAX_TRACKED_OPENS, opens.size());
+        }
+        prefs.edit().putString(KEY_APP_OPENS, TextUtils.join(",", opens)).apply();
+    }
+
+    /**
+     * @return the periodic sync interval currently in effect, in seconds.
+     */
+    public static int getSyncInterval(Context context) {
+        return getPrefs(context).getInt(KEY_SYNC_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+    }
+
+    /**
+     * Decides whether a sync that wasn't requested by the user should wait for a better network.
+     * Retries are never deferred, as a deferred retry would set no further alarm and the backoff
+     * would stop there.
+     *
+     * @param extras The extras of the sync about to run
+     * @return true if the sync should be skipped for now
+     */
+    static boolean shouldDefer(Context context, Bundle extras) {
+        if (extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)
+                || extras.getBoolean(EXTRA_RETRY, false)) {
+            return false;
+        }
+        SharedPreferences prefs = getPrefs(context);
+        long dataAge = System.currentTimeMillis() - prefs.getLong(KEY_LAST_SUCCESS, 0);
+        if (dataAge >= DEFERRABLE_DATA_AGE_MILLIS) {
+            return false;
+        }
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (!ConnectivityManagerCompat.isActiveNetworkMetered(cm) || isCharging(context)) {
+            return false;
+        }
+        logDecision(prefs, "defer", "metered and discharging, data is "
+                + dataAge / DateUtils.MINUTE_IN_MILLIS + " min old");
+        return true;
+    }
+
+    /**
+     * Adapts the periodic sync to the forecast that was just stored and cancels any pending
+     * retry.
+     *
+     * @param locationSetting The location the forecast is for
+     * @param forecast The rows inserted by the sync
+     */
+    static void onSyncSucceeded(Context context, String locationSetting,
+                                ContentValues[] forecast) {
+        SharedPreferences prefs = getPrefs(context);
+        cancelRetry(context);
+
+        // A new location says nothing about how much the weather is changing
+        String previous = locationSetting.equals(prefs.getString(KEY_LAST_LOCATION, null))
+                ? prefs.getString(KEY_LAST_FORECAST, "") : "";
+        String current = summarize(forecast);
+        float volatility = prefs.getFloat(KEY_VOLATILITY, (HIGH_VOLATILITY + LOW_VOLATILITY) / 2);
+        float change = compare(previous, current);
+        if (change >= 0) {
+            volatility = VOLATILITY_SMOOTHING * change + (1 - VOLATILITY_SMOOTHING) * volatility;
+        }
+
+        float opensPerDay = getOpensPerDay(prefs);
+        boolean pushAvailable = isPushAvailable(context);
+        int interval = computeSyncInterval(volatility, opensPerDay, pushAvailable);
+        int previousInterval = prefs.getInt(KEY_SYNC_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+
+        prefs.edit()
+                .putLong(KEY_LAST_SUCCESS, System.currentTimeMillis())
+                .putString(KEY_LAST_LOCATION, locationSetting)
+                .putString(KEY_LAST_FORECAST, current)
+                .putFloat(KEY_VOLATILITY, volatility)
+                .putInt(KEY_SYNC_INTERVAL, interval)
+                .putInt(KEY_RETRY_ATTEMPT, 0)
+                .apply();
+
+        String detail = String.format(Locale.US, "volatility %.1f, %.1f opens/day, push %b, interval %d min",
+                volatility, opensPerDay, pushAvailable, interval / 60);
+        if (interval != previousInterval) {
+            SunshineSyncAdapter.configurePeriodicSync(context, interval, interval / 3);
+            logDecision(prefs, "reschedule", detail);
+        } else {
+            logDecision(prefs, "keep", detail);
+        }
+    }
+
+    /**
+     * Schedules a retry after the server failed to deliver a forecast, backing off exponentially
+     * with each consecutive failure.
+     */
+    static void onServerError(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        int attempt = prefs.getInt(KEY_RETRY_ATTEMPT, 0);
+        if (attempt >= MAX_RETRIES) {
+            logDecision(prefs, "give up", "after " + attempt + " retries, waiting for the periodic sync");
+            return;
+        }
+
+        long delay = computeBackoff(attempt, sRandom);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + delay,
+                getRetryIntent(context));
+        prefs.edit().putInt(KEY_RETRY_ATTEMPT, attempt + 1).apply();
+        logDecision(prefs, "retry", "attempt " + (attempt + 1) + " in "
+                + delay / DateUtils.SECOND_IN_MILLIS + " s");
+    }
+
+    /**
+     * @return the most recent scheduling decisions, oldest first.
+     */
+    public static List<String> getDecisionLog(Context context) {
+        String log = getPrefs(context).getString(KEY_DECISION_LOG, "");
+        if (log.length() == 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(TextUtils.split(log, "\n"));
+    }
+
+    /**
+     * Shortens the base interval when the forecast keeps changing or the app is used a lot, and
+     * stretches it when the weather is settled or nobody is looking.  Polling is only a safety
+     * net when forecast changes are pushed.
+     */
+    static int computeSyncInterval(float volatility, float opensPerDay, boolean pushAvailable) {
+        float interval = SunshineSyncAdapter.SYNC_INTERVAL;
+        if (volatility >= HIGH_VOLATILITY) {
+            interval /= 2;
+        } else if (volatility < LOW_VOLATILITY) {
+            interval *= 2;
+        }
+        if (opensPerDay >= FREQUENT_OPENS_PER_DAY) {
+            interval *= 0.75f;
+        } else if (opensPerDay < RARE_OPENS_PER_DAY) {
+            interval *= 1.5f;
+        }
+        int maxInterval = MAX_SYNC_INTERVAL;
+        if (pushAvailable) {
+            interval *= PUSH_INTERVAL_FACTOR;
+            maxInterval = MAX_PUSH_SYNC_INTERVAL;
+        }
+        int rounded = Math.round(interval / SYNC_INTERVAL_STEP) * SYNC_INTERVAL_STEP;
+        return Math.max(MIN_SYNC_INTERVAL, Math.min(maxInterval, rounded));
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half random,
+     * so retries from many devices don't hit the server at the same moment.
+     */
+    static long computeBackoff(int attempt, Random random) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt, 16));
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+
+    static void cancelRetry(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(getRetryIntent(context));
+    }
+
+    private static PendingIntent getRetryIntent(Context context) {
+        Intent intent = new Intent(context, SyncRetryReceiver.class);
+        return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static boolean isPushAvailable(Context context) {
+        // MainActivity keeps the GCM registration id in its own preferences
+        SharedPreferences gcmPrefs = context.getSharedPreferences(
+                MainActivity.class.getSimpleName(), Context.MODE_PRIVATE);
+        return !TextUtils.isEmpty(gcmPrefs.getString(MainActivity.PROPERTY_REG_ID, null));
+    }
+
+    private static boolean isCharging(Context context) {
+        // ACTION_BATTERY_CHANGED is sticky, so this returns the current state without a receiver
+        Intent battery = context.getApplicationContext().registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+
+    /**
+     * Condenses the first few days of a forecast into "date:max:min:weatherId" entries.
+     */
+    private static String summarize(ContentValues[] forecast) {
+        List<String> days = new ArrayList<>(VOLATILITY_DAYS);
+        for (int i = 0; i < forecast.length && i < VOLATILITY_DAYS; i++) {
+            ContentValues day = forecast[i];
+            days.add(day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE) + ":"
+                    + day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP) + ":"
+                    + day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP) + ":"
+                    + day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        }
+        return TextUtils.join(",", days);
+    }
+
+    /**
+     * @return the mean change per day between the days both summaries cover, or -1 if they
+     * don't overlap.
+     */
+    private static float compare(String previous, String current) {
+        if (previous.length() == 0 || current.length() == 0) {
+            return -1;
+        }
+        float totalChange = 0;
+        int comparedDays = 0;
+        for (String previousDay : TextUtils.split(previous, ",")) {
+            String[] before = TextUtils.split(previousDay, ":");
+            for (String currentDay : TextUtils.split(current, ",")) {
+                String[] after = TextUtils.split(currentDay, ":");
+                if (!before[0].equals(after[0])) {
+                    continue;
+                }
+                totalChange += Math.abs(Double.parseDouble(after[1]) - Double.parseDouble(before[1]));
+                totalChange += Math.abs(Double.parseDouble(after[2]) - Double.parseDouble(before[2]));
+                // Weather condition ids are grouped by hundreds, e.g. 5xx is rain
+                if (Integer.parseInt(after[3]) / 100 != Integer.parseInt(before[3]) / 100) {
+                    totalChange += CONDITION_CHANGE_WEIGHT;
+                }
+                comparedDays++;
+            }
+        }
+        return comparedDays == 0 ? -1 : totalChange / comparedDays;
+    }
+
+    private static float getOpensPerDay(SharedPreferences prefs) {
+        long now = System.currentTimeMillis();
+        List<String> opens = pruneOpens(prefs.getString(KEY_APP_OPENS, ""), now);
+        if (opens.isEmpty()) {
+            return 0;
+        }
+        // Don't extrapolate from less than a day of history
+        long span = Math.max(DateUtils.DAY_IN_MILLIS, now - Long.parseLong(opens.get(0)));
+        return opens.size() * (float) DateUtils.DAY_IN_MILLIS / span;
+    }
+
+    private static List<String> pruneOpens(String opens, long now) {
+        List<String> recent = new ArrayList<>();
+        for (String open : TextUtils.split(opens, ",")) {
+            if (now - Long.parseLong(open) < USAGE_WINDOW_MILLIS) {
+                recent.add(open);
+            }
+        }
+        return recent;
+    }
+
+    private static void logDecision(SharedPreferences prefs, String decision, String detail) {
+        Log.d(LOG_TAG, decision + ": " + detail);
+        List<String> log = new ArrayList<>(Arrays.asList(
+                TextUtils.split(prefs.getString(KEY_DECISION_LOG, ""), "\n")));
+        log.add(System.currentTimeMillis() + " " + decision + ": " + detail);
+        if (log.size() > MAX_LOG_ENTRIES) {
+            log = log.subList(log.size() - MAX_LOG_ENTRIES, log.size());
+        }
+        prefs.edit().putString(KEY_DECISION_LOG, TextUtils.join("\n", log)).apply();
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
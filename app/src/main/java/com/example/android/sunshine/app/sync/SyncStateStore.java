@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.R;
+
+/**
+ * The state the sync and wear paths change as they run: the location status, when the weather
+ * was last notified, and what was last sent to the wearables.
+ *
+ * It's kept in a small preferences file of its own rather than in the default one, and written
+ * with apply(), so a sync doesn't rewrite and sync every setting to disk several times over.
+ * apply() renames the old file to a backup before rewriting it, and deletes the backup once the
+ * new file is synced, so after a crash the next load falls back to the backup: the old values
+ * or the new ones, never a mix.
+ */
+public class SyncStateStore {
+    private static final String PREFS_NAME = "sync_state";
+
+    private SyncStateStore() {
+    }
+
+    @SuppressWarnings("ResourceType")
+    public static @SunshineSyncAdapter.LocationStatus int getLocationStatus(Context context) {
+        return getPrefs(context).getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    public static void setLocationStatus(Context context,
+                                         @SunshineSyncAdapter.LocationStatus int locationStatus) {
+        getPrefs(context).edit()
+                .putInt(context.getString(R.string.pref_location_status_key), locationStatus)
+                .apply();
+    }
+
+    /**
+     * @return when the weather was last notified, in milliseconds since the epoch
+     */
+    static long getLastNotification(Context context) {
+        String key = context.getString(R.string.pref_last_notification);
+        SharedPreferences prefs = getPrefs(context);
+        if (prefs.contains(key)) {
+            return prefs.getLong(key, 0);
+        }
+        // Stored in the default preferences before, so the day's notification isn't repeated
+        return PreferenceManager.getDefaultSharedPreferences(context).getLong(key, 0);
+    }
+
+    static void setLastNotification(Context context, long time) {
+        getPrefs(context).edit()
+                .putLong(context.getString(R.string.pref_last_notification), time)
+                .apply();
+    }
+
+    /**
+     * @return whether the given values differ from the ones last sent to the wearables
+     */
+    public static boolean isWearDataChanged(Context context, String lowTemp, String highTemp,
+                                            String art) {
+        SharedPreferences prefs = getPrefs(context);
+        return !lowTemp.equals(prefs.getString(context.getString(R.string.pref_prev_low_temp), null))
+                || !highTemp.equals(prefs.getString(context.getString(R.string.pref_prev_high_temp), null))
+                || !(art != null && art.equals(
+                        prefs.getString(context.getString(R.string.pref_prev_art), null)));
+    }
+
+    public static void setWearData(Context context, String lowTemp, String highTemp, String art) {
+        getPrefs(context).edit()
+                .putString(context.getString(R.string.pref_prev_low_temp), lowTemp)
+                .putString(context.getString(R.string.pref_prev_high_temp), highTemp)
+                .putString(context.getString(R.string.pref_prev_art), art)
+                .apply();
+    }
+
+    /**
+     * Registers a listener for changes of the state, such as of the location status.  The keys
+     * are the same as they were in the default preferences.
+     */
+    public static void registerListener(Context context,
+                                        SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        getPrefs(context).registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public static void unregisterListener(Context context,
+                                          SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        getPrefs(context).unregisterOnSharedPreferenceChangeListener(listener);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
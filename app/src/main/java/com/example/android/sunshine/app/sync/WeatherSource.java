@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.IOException;
+
+/**
+ * A service the forecast can be fetched from.
+ *
+ * Sources are queried in parallel by {@link WeatherSourceEngine}, each on its own thread, so
+ * fetch may block.  A source which can't answer for the location throws, and the sync goes on
+ * with the other sources.
+ */
+interface WeatherSource {
+
+    /**
+     * @return a short name for the source, for the logs
+     */
+    String getName();
+
+    /**
+     * Fetches the forecast for the given location.
+     *
+     * @param locationSetting The location, as set in the preferences
+     * @param numDays The number of days to fetch, starting today
+     * @return the forecast, with whichever fields the source provides
+     * @throws IOException if the source couldn't be reached
+     * @throws WeatherSourceException if the source answered, but without a forecast
+     */
+    SourceForecast fetch(String locationSetting, int numDays)
+            throws IOException, WeatherSourceException;
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the forecast from several {@link WeatherSource}s at once, and merges what they return.
+ *
+ * Every source gets the same latency budget, and the sources still running when it runs out are
+ * cancelled and left out, as are those which fail, so one slow or broken source can't hold up
+ * or fail the sync.  The forecasts which came back are merged field by field, each field taken
+ * from the first source, in order of priority, which provides it.
+ */
+class WeatherSourceEngine {
+    private static final String LOG_TAG = WeatherSourceEngine.class.getSimpleName();
+
+    // Each fetch gets its own thread, so a source which ignores being cancelled only keeps its
+    // own thread busy, and never delays the next sync
+    private static final ExecutorService sFetchExecutor = Executors.newCachedThreadPool();
+
+    private final List<WeatherSource> mSources;
+    private final long mBudgetMillis;
+
+    /**
+     * @param sources The sources to query, the highest priority first
+     * @param budgetMillis How long to wait for the sources
+     */
+    WeatherSourceEngine(List<WeatherSource> sources, long budgetMillis) {
+        mSources = new ArrayList<>(sources);
+        mBudgetMillis = budgetMillis;
+    }
+
+    /**
+     * Fetches the forecast from every source, and merges those which came back in time.
+     *
+     * @throws WeatherSourceException if no source returned a usable forecast, with the failure
+     * of the highest priority source
+     */
+    SourceForecast fetch(final String locationSetting, final int numDays)
+            throws WeatherSourceException {
+        ArrayList<Callable<SourceForecast>> fetches = new ArrayList<>(mSources.size());
+        for (final WeatherSource source : mSources) {
+            fetches.add(new Callable<SourceForecast>() {
+                @Override
+                public SourceForecast call() throws Exception {
+                    return source.fetch(locationSetting, numDays);
+                }
+            });
+        }
+
+        List<Future<SourceForecast>> futures;
+        try {
+            // Returns once every fetch is done, or cancels those still running at the deadline
+            futures = sFetchExecutor.invokeAll(fetches, mBudgetMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WeatherSourceException(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                    "Interrupted while fetching the forecast", e);
+        }
+
+        ArrayList<SourceForecast> forecasts = new ArrayList<>(futures.size());
+        WeatherSourceException firstFailure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            String name = mSources.get(i).getName();
+            WeatherSourceException failure;
+            try {
+                forecasts.add(futures.get(i).get());
+                continue;
+            } catch (CancellationException e) {
+                failure = new WeatherSourceException(
+                        SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                        name + " took longer than " + mBudgetMillis + "ms", e);
+            } catch (ExecutionException e) {
+                failure = toSourceException(name, e.getCause());
+            } catch (InterruptedException e) {
+                // The fetches are all done, so this doesn't wait
+                Thread.currentThread().interrupt();
+                failure = new WeatherSourceException(
+                        SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, "Interrupted", e);
+            }
+            Log.w(LOG_TAG, "Leaving out " + name + ": " + failure.getMessage(), failure.getCause());
+            if (firstFailure == null) {
+                firstFailure = failure;
+            }
+        }
+
+        if (forecasts.isEmpty()) {
+            if (firstFailure == null) {
+                firstFailure = new WeatherSourceException(
+                        SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, "No weather sources");
+            }
+            throw firstFailure;
+        }
+        return merge(forecasts);
+    }
+
+    private static WeatherSourceException toSourceException(String name, Throwable cause) {
+        if (cause instanceof WeatherSourceException) {
+            return (WeatherSourceException) cause;
+        } else if (cause instanceof IOException) {
+            return new WeatherSourceException(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                    name + " couldn't be reached", cause);
+        }
+        return new WeatherSourceException(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID,
+                name + " failed", cause);
+    }
+
+    /**
+     * Merges forecasts field by field, taking each from the first forecast which has it.  Days
+     * which are still missing a field once merged are left out.
+     *
+     * @param forecasts The forecasts, the highest priority first
+     * @throws WeatherSourceException if no forecast has the position of the location
+     */
+    static SourceForecast merge(List<SourceForecast> forecasts) throws WeatherSourceException {
+        SourceForecast merged = new SourceForecast();
+        int dayCount = 0;
+        for (SourceForecast forecast : forecasts) {
+            if (merged.cityName == null) {
+                merged.cityName = forecast.cityName;
+            }
+            // The coordinates go together, so they're taken from the same source
+            if (merged.coordLat == null && forecast.coordLat != null
+                    && forecast.coordLong != null) {
+                merged.coordLat = forecast.coordLat;
+                merged.coordLong = forecast.coordLong;
+            }
+            dayCount = Math.max(dayCount, forecast.days.size());
+        }
+        if (merged.cityName == null || merged.coordLat == null) {
+            throw new WeatherSourceException(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID,
+                    "No source returned the location");
+        }
+
+        for (int i = 0; i < dayCount; i++) {
+            SourceForecast.Day day = new SourceForecast.Day();
+            for (SourceForecast forecast : forecasts) {
+                if (i >= forecast.days.size() || forecast.days.get(i) == null) {
+                    continue;
+                }
+                SourceForecast.Day from = forecast.days.get(i);
+                if (day.weatherId == null && from.weatherId != null) {
+                    // The description goes with the weather id
+                    day.weatherId = from.weatherId;
+                    day.description = from.description;
+                }
+                if (day.high == null) day.high = from.high;
+                if (day.low == null) day.low = from.low;
+                if (day.humidity == null) day.humidity = from.humidity;
+                if (day.pressure == null) day.pressure = from.pressure;
+                if (day.windSpeed == null) day.windSpeed = from.windSpeed;
+                if (day.windDirection == null) day.windDirection = from.windDirection;
+                if (!day.hasHours() && from.hasHours()) {
+                    // The series of a day all go together
+                    day.firstHour = from.firstHour;
+                    day.hourlyTemps = from.hourlyTemps;
+                    day.hourlyPrecipitations = from.hourlyPrecipitations;
+                    day.hourlyWindSpeeds = from.hourlyWindSpeeds;
+                }
+            }
+            merged.days.add(day.isComplete() ? day : null);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+/**
+ * Thrown when a {@link WeatherSource} answered without a forecast, along with the location
+ * status the failure should be reported as.
+ */
+class WeatherSourceException extends Exception {
+    @SunshineSyncAdapter.LocationStatus
+    private final int mLocationStatus;
+
+    WeatherSourceException(@SunshineSyncAdapter.LocationStatus int locationStatus,
+                           String message) {
+        super(message);
+        mLocationStatus = locationStatus;
+    }
+
+    WeatherSourceException(@SunshineSyncAdapter.LocationStatus int locationStatus,
+                           String message, Throwable cause) {
+        super(message, cause);
+        mLocationStatus = locationStatus;
+    }
+
+    @SunshineSyncAdapter.LocationStatus
+    int getLocationStatus() {
+        return mLocationStatus;
+    }
+}
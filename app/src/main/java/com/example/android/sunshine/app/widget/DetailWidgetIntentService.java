@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.IntentService;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * IntentService which tells the Detail widgets to reload their list, but only when the rows they
+ * would display differ from the ones they were last told to load.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class DetailWidgetIntentService extends IntentService {
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_DATE = 0;
+    private static final int INDEX_WEATHER_CONDITION_ID = 1;
+    private static final int INDEX_WEATHER_DESC = 2;
+    private static final int INDEX_WEATHER_MAX_TEMP = 3;
+    private static final int INDEX_WEATHER_MIN_TEMP = 4;
+
+    // FNV-1a parameters, used to fingerprint the displayed rows
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static boolean sHasDigest = false;
+    private static long sLastDigest;
+
+    public DetailWidgetIntentService() {
+        super("DetailWidgetIntentService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(this, DetailWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        long digest = computeDisplayedDigest();
+        if (sHasDigest && digest == sLastDigest) {
+            // The list would render exactly as it does now
+            return;
+        }
+        sHasDigest = true;
+        sLastDigest = digest;
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+    }
+
+    /**
+     * Fingerprints every value that {@link DetailWidgetRemoteViewsService} renders, formatted the
+     * same way, so that unit or art pack changes are picked up as well.
+     */
+    private long computeDisplayedDigest() {
+        String location = Utility.getPreferredLocation(this);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        long digest = hash(FNV_OFFSET_BASIS, location);
+        boolean usingLocalGraphics = Utility.usingLocalGraphics(this);
+        if (data != null) {
+            while (data.moveToNext()) {
+                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                digest = hash(digest, Utility.getFriendlyDayString(this, dateInMillis, false));
+                digest = hash(digest, data.getString(INDEX_WEATHER_DESC));
+                digest = hash(digest, Utility.formatTemperature(this,
+                        data.getDouble(INDEX_WEATHER_MAX_TEMP)));
+                digest = hash(digest, Utility.formatTemperature(this,
+                        data.getDouble(INDEX_WEATHER_MIN_TEMP)));
+                digest = hash(digest, usingLocalGraphics
+                        ? Integer.toString(Utility.getIconResourceForWeatherCondition(weatherId))
+                        : Utility.getArtUrlForWeatherCondition(this, weatherId));
+            }
+            data.close();
+        }
+        return digest;
+    }
+
+    private static long hash(long digest, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                digest ^= value.charAt(i);
+                digest *= FNV_PRIME;
+            }
+        }
+        // Separate the fields so that "ab" + "c" doesn't collide with "a" + "bc"
+        digest ^= 0xff;
+        digest *= FNV_PRIME;
+        return digest;
+    }
+}
@@ -21,34 +21,31 @@ import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 
 /**
- * IntentService which handles updating all Today widgets with the latest data
+ * IntentService which handles updating all Today widgets with the latest data.
+ *
+ * The last model pushed to each widget is remembered, so that widgets whose content didn't change
+ * are skipped and widgets whose layout didn't change only receive a partial update.
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+    // Set when the host may have lost the widget's views and needs a full update
+    static final String EXTRA_FULL_UPDATE = "full_update";
+
+    // The model last pushed to each widget id
+    private static final SparseArray<RenderedWidget> sLastRendered = new SparseArray<>();
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -61,36 +58,34 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
+        // Get today's data from the forecast snapshot
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        ForecastSnapshot data = ForecastSnapshot.open(this, location);
         if (data == null) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
+        int today = data.getFirstPositionFrom(System.currentTimeMillis());
+        if (today >= data.getCount()) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
+        // Extract the weather data from the snapshot
+        int weatherId = data.getWeatherId(today);
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
+        String description = data.getDescription(today);
+        double maxTemp = data.getHigh(today);
+        double minTemp = data.getLow(today);
         String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
+
+        boolean fullUpdate = intent != null && intent.getBooleanExtra(EXTRA_FULL_UPDATE, false);
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
             // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,7 +94,28 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
+
+            RenderedWidget rendered = new RenderedWidget(layoutId, weatherArtResourceId,
+                    description, formattedMaxTemperature, formattedMinTemperature);
+            RenderedWidget lastRendered;
+            synchronized (sLastRendered) {
+                lastRendered = fullUpdate ? null : sLastRendered.get(appWidgetId);
+                if (rendered.equals(lastRendered)) {
+                    // Nothing the user can see has changed, so leave the launcher alone
+                    continue;
+                }
+                sLastRendered.put(appWidgetId, rendered);
+            }
+
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            if (lastRendered != null && lastRendered.layoutId == layoutId
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Same layout as last time: only send the views that changed, so the host can
+                // apply them to the existing views instead of inflating the widget again
+                setChangedViews(views, lastRendered, rendered);
+                partiallyUpdateWidget(appWidgetManager, appWidgetId, views);
+                continue;
+            }
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -121,6 +137,41 @@ public class TodayWidgetIntentService extends IntentService {
         }
     }
 
+    private void setChangedViews(RemoteViews views, RenderedWidget last, RenderedWidget current) {
+        if (last.iconResourceId != current.iconResourceId) {
+            views.setImageViewResource(R.id.widget_icon, current.iconResourceId);
+        }
+        if (!TextUtils.equals(last.description, current.description)) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                setRemoteContentDescription(views, current.description);
+            }
+            views.setTextViewText(R.id.widget_description, current.description);
+        }
+        if (!TextUtils.equals(last.highTemperature, current.highTemperature)) {
+            views.setTextViewText(R.id.widget_high_temperature, current.highTemperature);
+        }
+        if (!TextUtils.equals(last.lowTemperature, current.lowTemperature)) {
+            views.setTextViewText(R.id.widget_low_temperature, current.lowTemperature);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void partiallyUpdateWidget(AppWidgetManager appWidgetManager, int appWidgetId,
+                                       RemoteViews views) {
+        appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
+    }
+
+    /**
+     * Forgets what was last pushed to the given widgets, e.g. because they were deleted.
+     */
+    static void forgetWidgets(int[] appWidgetIds) {
+        synchronized (sLastRendered) {
+            for (int appWidgetId : appWidgetIds) {
+                sLastRendered.remove(appWidgetId);
+            }
+        }
+    }
+
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
@@ -148,4 +199,47 @@ public class TodayWidgetIntentService extends IntentService {
     private void setRemoteContentDescription(RemoteViews views, String description) {
         views.setContentDescription(R.id.widget_icon, description);
     }
+
+    /**
+     * Everything about a Today widget that is visible to the user.
+     */
+    private static class RenderedWidget {
+        final int layoutId;
+        final int iconResourceId;
+        final String description;
+        final String highTemperature;
+        final String lowTemperature;
+
+        RenderedWidget(int layoutId, int iconResourceId, String description,
+                       String highTemperature, String lowTemperature) {
+            this.layoutId = layoutId;
+            this.iconResourceId = iconResourceId;
+            this.description = description;
+            this.highTemperature = highTemperature;
+            this.lowTemperature = lowTemperature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RenderedWidget)) {
+                return false;
+            }
+            RenderedWidget other = (RenderedWidget) o;
+            return layoutId == other.layoutId
+                    && iconResourceId == other.iconResourceId
+                    && TextUtils.equals(description, other.description)
+                    && TextUtils.equals(highTemperature, other.highTemperature)
+                    && TextUtils.equals(lowTemperature, other.lowTemperature);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = layoutId;
+            result = 31 * result + iconResourceId;
+            result = 31 * result + (description != null ? description.hashCode() : 0);
+            result = 31 * result + (highTemperature != null ? highTemperature.hashCode() : 0);
+            result = 31 * result + (lowTemperature != null ? lowTemperature.hashCode() : 0);
+            return result;
+        }
+    }
 }
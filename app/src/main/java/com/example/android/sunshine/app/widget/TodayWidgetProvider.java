@@ -28,13 +28,16 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  * Provider for a horizontally expandable widget showing today's weather.
  *
  * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * data retrieval is done on a background thread. Data updates are debounced through
+ * {@link WidgetUpdateScheduler}.
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host is asking for the widgets, so it may not have any views to partially update
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(TodayWidgetIntentService.EXTRA_FULL_UPDATE, true));
     }
 
     @Override
@@ -43,11 +46,16 @@ public class TodayWidgetProvider extends AppWidgetProvider {
         context.startService(new Intent(context, TodayWidgetIntentService.class));
     }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        TodayWidgetIntentService.forgetWidgets(appWidgetIds);
+    }
+
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetUpdateScheduler.scheduleUpdate(context, TodayWidgetIntentService.class);
         }
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * Coalesces bursts of {@link com.example.android.sunshine.app.sync.SunshineSyncAdapter#ACTION_DATA_UPDATED}
+ * broadcasts into a single widget refresh.
+ *
+ * Each call to {@link #scheduleUpdate(Context, Class)} pushes the pending refresh for that
+ * service back by {@link #DEBOUNCE_MILLIS}, so a sync that touches the data several times in a
+ * row only costs the launcher one round of updates.  The refresh is an alarm rather than a
+ * delayed message, since the process can be killed once the receiver which scheduled it returns.
+ */
+public class WidgetUpdateScheduler {
+    // How long to wait for further data updates before refreshing the widgets
+    static final long DEBOUNCE_MILLIS = 1000;
+
+    private WidgetUpdateScheduler() {
+    }
+
+    /**
+     * Schedules the given widget update service to run once the data updates have settled.
+     *
+     * @param context Context used to set the alarm
+     * @param serviceClass The IntentService which refreshes a type of widget
+     */
+    public static void scheduleUpdate(Context context, Class<? extends Service> serviceClass) {
+        // The same pending intent replaces the alarm set for the previous update
+        PendingIntent update = PendingIntent.getService(context, 0,
+                new Intent(context, serviceClass), PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + DEBOUNCE_MILLIS, update);
+    }
+}
@@ -30,6 +30,7 @@ import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
@@ -38,13 +39,14 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
+import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
@@ -70,6 +72,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
      */
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
+    /**
+     * Cached weather older than this is asked for again when the face becomes visible.
+     */
+    private static final long WEATHER_MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
@@ -80,7 +87,37 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         return new Engine();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
+    /**
+     * Reads the cached weather off the main thread, then has the engine draw it.  Only holds the
+     * engine weakly, so a finished engine isn't kept for the read.
+     */
+    private static class LoadWeatherTask extends AsyncTask<Void, Void, Void> {
+        private final Context mContext;
+        private final WeakReference<Engine> mEngine;
+
+        LoadWeatherTask(Context context, Engine engine) {
+            mContext = context.getApplicationContext();
+            mEngine = new WeakReference<>(engine);
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            WeatherCache.load(mContext);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            Engine engine = mEngine.get();
+            if (engine != null) {
+                engine.onWeatherLoaded();
+            }
+        }
+    }
+
+    private class Engine extends CanvasWatchFaceService.Engine
+            implements GoogleApiClient.ConnectionCallbacks,
+            GoogleApiClient.OnConnectionFailedListener {
         boolean mRegisteredTimeZoneReceiver = false;
         Paint mBackgroundPaint;
         Paint mTimePaint;
@@ -110,6 +147,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         float mLineYOffset;
         float mLineLength;
         GoogleApiClient mGoogleApiClient;
+        boolean mRequestOutstanding;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -179,12 +217,39 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
             mTime = new Time();
             mDate = new Date();
+
+            mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
+                    .addApi(Wearable.API)
+                    .addConnectionCallbacks(this)
+                    .addOnConnectionFailedListener(this)
+                    .build();
+
+            // Read as early as possible, so the weather shows after as few frames as possible
+            new LoadWeatherTask(SunshineWatchFace.this, this).execute();
+        }
+
+        @Override
+        public void onDestroy() {
+            unregisterReceiver();
+            mRequestOutstanding = false;
+            mGoogleApiClient.disconnect();
+            super.onDestroy();
+        }
+
+        void onWeatherLoaded() {
+            if (isVisible()) {
+                requestWeatherIfStale();
+                invalidate();
+            }
         }
 
         private Collection<String> getNodes() {
             HashSet<String> results = new HashSet<>();
             NodeApi.GetConnectedNodesResult nodes =
                     Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).await();
+            if (!nodes.getStatus().isSuccess()) {
+                return results;
+            }
 
             for (Node node : nodes.getNodes()) {
                 results.add(node.getId());
@@ -200,41 +265,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
 
-                if (!WeatherListenerService.sWeatherReceived) {
-                    mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
-                            .addApi(Wearable.API)
-                            .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
-                                @Override
-                                public void onConnected(@Nullable Bundle bundle) {
-                                    (new AsyncTask<Void, Void, Void>() {
-                                        @Override
-                                        protected Void doInBackground(Void... params) {
-                                            Collection<String> nodes = getNodes();
-                                            for (String node : nodes) {
-                                                Wearable.MessageApi.sendMessage(
-                                                        mGoogleApiClient, node, "/request-data", new byte[0]).setResultCallback(
-                                                        new ResultCallback<MessageApi.SendMessageResult>() {
-                                                            @Override
-                                                            public void onResult(MessageApi.SendMessageResult sendMessageResult) {
-                                                                if (!sendMessageResult.getStatus().isSuccess()) {
-                                                                    Log.e(TAG, "Failed to send message with status code: "
-                                                                            + sendMessageResult.getStatus().getStatusCode());
-                                                                }
-                                                            }
-                                                        }
-                                                );
-                                            }
-                                            return null;
-                                        }
-                                    }).execute();
-                                }
-
-                                @Override
-                                public void onConnectionSuspended(int i) {
-                                }
-                            })
-                            .build();
-                    mGoogleApiClient.connect();
+                // Until the cache is read, it isn't known whether the weather is stale.  The
+                // request is then made once it's read.
+                if (WeatherCache.isLoaded()) {
+                    requestWeatherIfStale();
                 }
 
                 // Update time zone in case it changed while we weren't visible.
@@ -245,6 +279,61 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
         }
 
+        private void requestWeatherIfStale() {
+            // The client stays connected only while a request is being sent, so a request made
+            // in the meantime would only send the same message again
+            if (mRequestOutstanding) {
+                return;
+            }
+            WeatherCache.Weather weather = WeatherCache.peek();
+            if (weather == null
+                    || System.currentTimeMillis() - weather.mReceivedTime > WEATHER_MAX_AGE_MS) {
+                mRequestOutstanding = true;
+                mGoogleApiClient.connect();
+            }
+        }
+
+        private void onRequestDone() {
+            mRequestOutstanding = false;
+            mGoogleApiClient.disconnect();
+        }
+
+        @Override
+        public void onConnected(@Nullable Bundle bundle) {
+            (new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    Collection<String> nodes = getNodes();
+                    for (String node : nodes) {
+                        MessageApi.SendMessageResult sendMessageResult = Wearable.MessageApi
+                                .sendMessage(mGoogleApiClient, node, "/request-data", new byte[0])
+                                .await();
+                        if (!sendMessageResult.getStatus().isSuccess()) {
+                            Log.e(TAG, "Failed to send message with status code: "
+                                    + sendMessageResult.getStatus().getStatusCode());
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                protected void onPostExecute(Void result) {
+                    onRequestDone();
+                }
+            }).execute();
+        }
+
+        @Override
+        public void onConnectionSuspended(int i) {
+            onRequestDone();
+        }
+
+        @Override
+        public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+            Log.e(TAG, "Failed to connect to request the weather: " + connectionResult);
+            mRequestOutstanding = false;
+        }
+
         private void registerReceiver() {
             if (mRegisteredTimeZoneReceiver) {
                 return;
@@ -322,30 +411,31 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             String dateText = new SimpleDateFormat("EEE, MMM d yyyy").format(mDate).toUpperCase();
             canvas.drawText(dateText, mScreenWidth / 2, mDateYOffset, mDatePaint);
 
-            if (WeatherListenerService.sWeatherReceived) {
+            WeatherCache.Weather weather = WeatherCache.peek();
+            if (weather != null) {
                 canvas.drawLine((mScreenWidth - mLineLength) / 2, mLineYOffset,
                         (mScreenWidth + mLineLength) / 2, mLineYOffset, mLinePaint);
-                mHighTempPaint.getTextBounds(WeatherListenerService.sHighTemperature, 0,
-                        WeatherListenerService.sHighTemperature.length(), mHighTempTextBounds);
+                mHighTempPaint.getTextBounds(weather.mHighTemperature, 0,
+                        weather.mHighTemperature.length(), mHighTempTextBounds);
                 float weatherTopY = mWeatherCenterYOffset - mHighTempTextBounds.exactCenterY();
                 float highTempWidth = mHighTempTextBounds.width();
                 float iconWidth = 0;
                 float iconHeight = 0;
-                if (WeatherListenerService.sIcon != null) {
-                    iconWidth = WeatherListenerService.sIcon.getWidth();
-                    iconHeight = WeatherListenerService.sIcon.getHeight();
+                if (weather.mIcon != null) {
+                    iconWidth = weather.mIcon.getWidth();
+                    iconHeight = weather.mIcon.getHeight();
                 }
-                float lowTempWidth = mLowTempPaint.measureText(WeatherListenerService.sLowTemperature);
+                float lowTempWidth = mLowTempPaint.measureText(weather.mLowTemperature);
                 float fullWeatherWidth = iconWidth + highTempWidth + lowTempWidth + 2 * mWeatherSpaceWidth;
-                if (WeatherListenerService.sIcon != null) {
-                    canvas.drawBitmap(WeatherListenerService.sIcon, (mScreenWidth - fullWeatherWidth) / 2,
+                if (weather.mIcon != null) {
+                    canvas.drawBitmap(weather.mIcon, (mScreenWidth - fullWeatherWidth) / 2,
                             mWeatherCenterYOffset - iconHeight / 2,
                             isInAmbientMode() ? mGrayIconPaint : mIconPaint);
                 }
-                canvas.drawText(WeatherListenerService.sHighTemperature,
+                canvas.drawText(weather.mHighTemperature,
                         (mScreenWidth - fullWeatherWidth) / 2 + iconWidth + mWeatherSpaceWidth,
                         weatherTopY, mHighTempPaint);
-                canvas.drawText(WeatherListenerService.sLowTemperature,
+                canvas.drawText(weather.mLowTemperature,
                         (mScreenWidth - fullWeatherWidth) / 2 + iconWidth + highTempWidth + 2 * mWeatherSpaceWidth,
                         weatherTopY, mLowTempPaint);
             }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The last weather received from the phone, kept in a file as well as in memory so that the
+ * watch face can draw it soon after the process was killed, without asking the phone for it
+ * again.  The file is read in the background, and frames only ever read the memory.
+ *
+ * The icon is stored as its decoded pixels, it's small and then loading it costs no decoding.
+ * The file is replaced atomically, so a crash while writing leaves the previous weather.
+ */
+class WeatherCache {
+    private static final String LOG_TAG = WeatherCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "weather_cache";
+    // Bump when the layout of the file changes, older files are then ignored
+    private static final int VERSION = 1;
+    // Far larger than any icon the phone sends, so a corrupt size can't exhaust the memory
+    private static final int MAX_ICON_SIZE = 512;
+
+    /**
+     * The weather to draw.  Never changes once it's been made.
+     */
+    static final class Weather {
+        final String mLowTemperature;
+        final String mHighTemperature;
+        // Null if the phone's icon couldn't be loaded
+        final Bitmap mIcon;
+        final long mReceivedTime;
+
+        Weather(String lowTemperature, String highTemperature, Bitmap icon, long receivedTime) {
+            mLowTemperature = lowTemperature;
+            mHighTemperature = highTemperature;
+            mIcon = icon;
+            mReceivedTime = receivedTime;
+        }
+    }
+
+    // Written under the class lock, but read without it, so drawing never waits for a write
+    private static volatile Weather sWeather;
+    private static volatile boolean sLoaded;
+
+    private WeatherCache() {
+    }
+
+    /**
+     * @return the last weather received, or null if none has been or the file hasn't been read
+     * yet.  Never blocks, so it can be called for every frame.
+     */
+    static Weather peek() {
+        return sWeather;
+    }
+
+    /**
+     * @return whether {@link #peek()} has the weather of the file, or newer
+     */
+    static boolean isLoaded() {
+        return sLoaded;
+    }
+
+    /**
+     * Reads the file on the calling thread, the first time only.  Not to be called on the main
+     * thread.
+     */
+    static synchronized void load(Context context) {
+        if (!sLoaded) {
+            sWeather = read(getFile(context));
+            sLoaded = true;
+        }
+    }
+
+    /**
+     * Keeps the given weather, and writes it to the file on the calling thread.  A missing
+     * temperature is kept as an empty one.
+     */
+    static void put(Context context, String lowTemperature, String highTemperature, Bitmap icon) {
+        Weather weather = new Weather(lowTemperature == null ? "" : lowTemperature,
+                highTemperature == null ? "" : highTemperature, icon, System.currentTimeMillis());
+        synchronized (WeatherCache.class) {
+            sWeather = weather;
+            sLoaded = true;
+        }
+        write(getFile(context), weather);
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    private static Weather read(AtomicFile file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            long receivedTime = in.readLong();
+            String lowTemperature = in.readUTF();
+            String highTemperature = in.readUTF();
+            Bitmap icon = null;
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width < 0 || width > MAX_ICON_SIZE || height < 0 || height > MAX_ICON_SIZE) {
+                Log.w(LOG_TAG, "Ignoring a cached icon of " + width + "x" + height);
+                return null;
+            }
+            if (width > 0 && height > 0) {
+                // The pixels are big endian, as DataOutputStream and ByteBuffer both are
+                byte[] bytes = new byte[width * height * 4];
+                in.readFully(bytes);
+                int[] pixels = new int[width * height];
+                ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+                icon = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+            }
+            return new Weather(lowTemperature, highTemperature, icon, receivedTime);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error reading the cached weather", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // It was only read, so there's nothing to lose
+                }
+            }
+        }
+    }
+
+    private static void write(AtomicFile file, Weather weather) {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(VERSION);
+            out.writeLong(weather.mReceivedTime);
+            out.writeUTF(weather.mLowTemperature);
+            out.writeUTF(weather.mHighTemperature);
+            Bitmap icon = weather.mIcon;
+            if (icon == null) {
+                out.writeInt(0);
+                out.writeInt(0);
+            } else {
+                int width = icon.getWidth();
+                int height = icon.getHeight();
+                int[] pixels = new int[width * height];
+                icon.getPixels(pixels, 0, width, 0, 0, width, height);
+                ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4);
+                bytes.asIntBuffer().put(pixels);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.write(bytes.array());
+            }
+            // Not closed, finishWrite syncs and closes the underlying stream
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the cached weather", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+}
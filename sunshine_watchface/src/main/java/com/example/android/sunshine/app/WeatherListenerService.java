@@ -18,11 +18,6 @@ import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 
 public class WeatherListenerService extends WearableListenerService {
-    static boolean sWeatherReceived = false;
-    static String sLowTemperature;
-    static String sHighTemperature;
-    static Bitmap sIcon;
-
     GoogleApiClient mGoogleApiClient;
 
     @Override
@@ -40,11 +35,10 @@ public class WeatherListenerService extends WearableListenerService {
                 DataMap dataMap = DataMapItem.fromDataItem(dataEvent.getDataItem()).getDataMap();
                 String path = dataEvent.getDataItem().getUri().getPath();
                 if (path.equals("/weather-data")) {
-                    sWeatherReceived = true;
-                    sLowTemperature = dataMap.getString("low-temperature");
-                    sHighTemperature = dataMap.getString("high-temperature");
                     Asset iconAsset = dataMap.getAsset("icon");
-                    sIcon = loadBitmapFromAsset(iconAsset);
+                    WeatherCache.put(this, dataMap.getString("low-temperature"),
+                            dataMap.getString("high-temperature"),
+                            loadBitmapFromAsset(iconAsset));
                 }
             }
         }